@@ -0,0 +1,43 @@
+package com.slm.share;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode throughput of the streaming decoder for 100KB to 20MB payloads. Run with the gc
+ * profiler (the default in build.gradle) to see bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class Base64DecoderBenchmark {
+
+    @Param({"102400", "1048576", "5242880", "20971520"})
+    public int size;
+
+    private String base64;
+
+    @Setup
+    public void setUp() {
+        base64 = Payloads.base64(Payloads.jpegLike(size));
+    }
+
+    @Benchmark
+    public long streamingDecode() throws IOException {
+        return Base64Decoder.decode(base64, Payloads.NULL, Payloads.BASE64_CHUNK, null);
+    }
+
+    @Benchmark
+    public byte[] decodeHead() {
+        return Base64Decoder.decodeHead(base64, 16);
+    }
+}
@@ -0,0 +1,39 @@
+package com.slm.share;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/** The two base64-to-file paths compared by DecodeToFileBenchmark and PeakHeap. */
+final class DecodePaths {
+
+    private DecodePaths() {
+    }
+
+    /**
+     * The path before the streaming decoder: the whole payload decoded into one byte[] and
+     * written at once. The MIME decoder stands in for android.util.Base64.DEFAULT, both skip
+     * characters outside the alphabet.
+     */
+    static long wholeArray(String base64, File target) throws IOException {
+        byte[] decoded = Base64.getMimeDecoder().decode(base64);
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            out.write(decoded);
+        } finally {
+            out.close();
+        }
+        return decoded.length;
+    }
+
+    /** The current path, as in SLMShare.decodeBase64ToStream. */
+    static long streaming(String base64, File target) throws IOException {
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            return Base64Decoder.decode(base64, out, Payloads.BASE64_CHUNK, null);
+        } finally {
+            out.close();
+        }
+    }
+}
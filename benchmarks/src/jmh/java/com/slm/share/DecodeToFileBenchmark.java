@@ -0,0 +1,54 @@
+package com.slm.share;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per base64-to-file write for 1/5/20 MB payloads: the whole-array path the plugin used
+ * before (decode everything, then write) against the streaming decoder. With the gc profiler
+ * B/op shows the whole-array path allocating the full payload while streaming stays flat.
+ * See PeakHeap for peak heap usage of the same two paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecodeToFileBenchmark {
+
+    @Param({"1048576", "5242880", "20971520"})
+    public int size;
+
+    private String base64;
+    private File target;
+
+    @Setup
+    public void setUp() throws IOException {
+        base64 = Payloads.base64(Payloads.jpegLike(size));
+        target = File.createTempFile("slm_share_bench", ".jpg");
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.delete();
+    }
+
+    @Benchmark
+    public long wholeArray() throws IOException {
+        return DecodePaths.wholeArray(base64, target);
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        return DecodePaths.streaming(base64, target);
+    }
+}
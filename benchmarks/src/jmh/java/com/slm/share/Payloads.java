@@ -0,0 +1,52 @@
+package com.slm.share;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Base64;
+import java.util.Random;
+
+/** Deterministic payloads shared by the benchmarks. */
+final class Payloads {
+
+    // Matches SLMShare.BASE64_CHUNK
+    static final int BASE64_CHUNK = 64 * 1024;
+
+    private Payloads() {
+    }
+
+    /** Random bytes behind a JPEG header, so sniffing sees a real image signature. */
+    static byte[] jpegLike(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        if (size >= 3) {
+            data[0] = (byte) 0xFF;
+            data[1] = (byte) 0xD8;
+            data[2] = (byte) 0xFF;
+        }
+        return data;
+    }
+
+    static String base64(byte[] data) {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    /** Deletes a benchmark cache directory, fresh files included, which ShareCache.clear keeps. */
+    static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    /** Discards everything, so only decoding is measured. */
+    static final OutputStream NULL = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+}
@@ -0,0 +1,91 @@
+package com.slm.share;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Peak heap and time of the whole-array and streaming base64-to-file paths for 1/5/20 MB
+ * payloads. Run with `gradle -p benchmarks peakHeap`.
+ *
+ * The base64 String is live before each run and is counted in the baseline, so "peak" is
+ * what a path adds on top of the payload it was handed. Peaks come from the heap memory
+ * pools after a GC and a reset, "allocated" from the thread's allocation counter; each case
+ * runs several times and the lowest peak and median time are reported.
+ */
+public final class PeakHeap {
+
+    private static final int[] SIZES_MB = {1, 5, 20};
+    private static final int RUNS = 5;
+
+    private interface Path {
+        long run(String base64, File target) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.printf(Locale.US, "%-10s %6s %12s %14s %10s%n", "path", "MB", "peak MB", "allocated MB", "time ms");
+        File target = File.createTempFile("slm_share_peak", ".jpg");
+        try {
+            for (int sizeMb : SIZES_MB) {
+                String base64 = Payloads.base64(Payloads.jpegLike(sizeMb * 1024 * 1024));
+                measure("wholeArray", sizeMb, base64, target, DecodePaths::wholeArray);
+                measure("streaming", sizeMb, base64, target, DecodePaths::streaming);
+            }
+        } finally {
+            target.delete();
+        }
+    }
+
+    private static void measure(String name, int sizeMb, String base64, File target, Path path) throws IOException {
+        // Warm up so JIT compilation is not in the numbers
+        for (int i = 0; i < 2; i++) path.run(base64, target);
+
+        long peak = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            List<MemoryPoolMXBean> pools = heapPools();
+            for (MemoryPoolMXBean pool : pools) pool.resetPeakUsage();
+            long baseline = used(pools);
+            long allocatedBefore = threadAllocated();
+
+            long start = System.nanoTime();
+            path.run(base64, target);
+            times[i] = System.nanoTime() - start;
+
+            allocated = Math.min(allocated, threadAllocated() - allocatedBefore);
+            long peakUsed = 0;
+            for (MemoryPoolMXBean pool : pools) peakUsed += pool.getPeakUsage().getUsed();
+            peak = Math.min(peak, Math.max(0, peakUsed - baseline));
+        }
+        Arrays.sort(times);
+        System.out.printf(Locale.US, "%-10s %6d %12.1f %14.1f %10.1f%n", name, sizeMb,
+                peak / 1048576.0, allocated / 1048576.0, times[RUNS / 2] / 1e6);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        pools.removeIf(pool -> pool.getType() != MemoryType.HEAP);
+        return pools;
+    }
+
+    private static long used(List<MemoryPoolMXBean> pools) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : pools) used += pool.getUsage().getUsed();
+        return used;
+    }
+
+    private static long threadAllocated() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+package com.slm.share;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cache hot paths a base64 share goes through: hashing the text for the key, sniffing
+ * the extension, and storing (decode to a temp file, then rename or drop on a hit).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ShareCacheBenchmark {
+
+    @Param({"102400", "1048576", "5242880", "20971520"})
+    public int size;
+
+    private String base64;
+    private File dir;
+    private ShareCache cache;
+
+    @Setup
+    public void setUp() throws IOException {
+        base64 = Payloads.base64(Payloads.jpegLike(size));
+        dir = Files.createTempDirectory("slm_share_bench").toFile();
+        cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        Payloads.deleteDir(dir);
+        dir.mkdirs();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Payloads.deleteDir(dir);
+    }
+
+    @Benchmark
+    public String hashString() {
+        return ShareCache.hashString(base64);
+    }
+
+    @Benchmark
+    public String sniffExtension() {
+        return MediaTypes.sniffBase64Extension(base64, null);
+    }
+
+    /** Unkeyed path: every call decodes and writes, the content hash is only known afterwards. */
+    @Benchmark
+    public File storeUnkeyed() throws IOException {
+        return cache.store(null, ".jpg",
+                out -> Base64Decoder.decode(base64, out, Payloads.BASE64_CHUNK, null));
+    }
+
+    /** Hit path: hash the text, then find the file already stored under it. */
+    @Benchmark
+    public File storeHit() throws IOException {
+        return cache.store(ShareCache.hashString(base64), ".jpg",
+                out -> Base64Decoder.decode(base64, out, Payloads.BASE64_CHUNK, null));
+    }
+}
@@ -0,0 +1,62 @@
+package com.slm.share;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The trim that runs at plugin start and after prepared shares expire, on a cache that is
+ * within its limits: list, stat and sort every file, then stop at the first one to keep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShareCacheTrimBenchmark {
+
+    @Param({"100", "1000"})
+    public int files;
+
+    private File dir;
+    private ShareCache cache;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("slm_share_trim").toFile();
+        long now = System.currentTimeMillis();
+        byte[] payload = new byte[1024];
+        for (int i = 0; i < files; i++) {
+            File file = new File(dir, ShareCache.hashString("file" + i) + (i % 10 == 0 ? ".part" : ".jpg"));
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(payload);
+            } finally {
+                out.close();
+            }
+            // Spread over the last hour, past the minimum age
+            file.setLastModified(now - 10 * 60 * 1000L - i * 3000L);
+        }
+        cache = new ShareCache(dir, Long.MAX_VALUE, 24 * 60 * 60 * 1000L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Payloads.deleteDir(dir);
+    }
+
+    @Benchmark
+    public long trimWithinLimits() {
+        return cache.trim();
+    }
+}
@@ -0,0 +1,30 @@
+package com.slm.share;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Share text building, called once per share and per target. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShareTextBenchmark {
+
+    public String text = "Mira este reporte de ventas del trimestre";
+    public String url = "https://example.com/reportes/2026/q3?ref=share";
+
+    @Benchmark
+    public String joinTextAndUrl() {
+        return ShareText.join(text, url, " ");
+    }
+
+    @Benchmark
+    public String joinTextOnly() {
+        return ShareText.join(text, null, " ");
+    }
+}
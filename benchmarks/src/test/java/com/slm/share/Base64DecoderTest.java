@@ -0,0 +1,99 @@
+package com.slm.share;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Base64DecoderTest {
+
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 4, 5, 7, 8, 13, 64, 1021, 64 * 1024};
+
+    @Test
+    public void matchesJdkForPaddedPayloads() throws IOException {
+        Random random = new Random(1);
+        for (int size = 0; size < 200; size++) {
+            byte[] data = randomBytes(random, size);
+            assertDecodes(data, Base64.getEncoder().encodeToString(data));
+        }
+    }
+
+    @Test
+    public void matchesJdkWithoutPadding() throws IOException {
+        Random random = new Random(2);
+        for (int size = 0; size < 200; size++) {
+            byte[] data = randomBytes(random, size);
+            assertDecodes(data, Base64.getEncoder().withoutPadding().encodeToString(data));
+        }
+    }
+
+    @Test
+    public void skipsLineBreaksLikeMimeDecoder() throws IOException {
+        Random random = new Random(3);
+        for (int size = 0; size < 600; size += 7) {
+            byte[] data = randomBytes(random, size);
+            String wrapped = Base64.getMimeEncoder().encodeToString(data);
+            assertArrayEquals(Base64.getMimeDecoder().decode(wrapped), data);
+            assertDecodes(data, wrapped);
+        }
+    }
+
+    @Test
+    public void decodesLargePayloadWithProductionChunk() throws IOException {
+        byte[] data = randomBytes(new Random(4), 5 * 1024 * 1024 + 1);
+        String base64 = Base64.getEncoder().encodeToString(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        assertEquals(data.length, Base64Decoder.decode(base64, out, 64 * 1024, null));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void stopsAtPadding() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64Decoder.decode("TWE=TWFu", out, 4, null);
+        assertArrayEquals("Ma".getBytes("US-ASCII"), out.toByteArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDanglingCharacter() throws IOException {
+        Base64Decoder.decode("TWFuT", new ByteArrayOutputStream(), 64, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyChunk() throws IOException {
+        Base64Decoder.decode("TWFu", new ByteArrayOutputStream(), 0, null);
+    }
+
+    @Test
+    public void headMatchesPrefix() {
+        Random random = new Random(5);
+        for (int size = 0; size < 64; size++) {
+            byte[] data = randomBytes(random, size);
+            String base64 = Base64.getEncoder().encodeToString(data);
+            for (int max = 1; max <= 16; max++) {
+                assertArrayEquals(Arrays.copyOf(data, Math.min(max, size)), Base64Decoder.decodeHead(base64, max));
+            }
+        }
+    }
+
+    private static void assertDecodes(byte[] expected, String base64) throws IOException {
+        for (int chunk : CHUNK_SIZES) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = Base64Decoder.decode(base64, out, chunk, null);
+            assertEquals("bytes written, chunk " + chunk, expected.length, written);
+            assertArrayEquals("chunk " + chunk + ", size " + expected.length, expected, out.toByteArray());
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,128 @@
+package com.slm.share;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MediaTypesTest {
+
+    private static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sniffsImages() {
+        assertSniffs("image/png", bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'));
+        assertSniffs("image/jpeg", bytes(0xFF, 0xD8, 0xFF, 0xE0));
+        assertSniffs("image/gif", ascii("GIF89a"));
+        assertSniffs("image/webp", ascii("RIFF\0\0\0\0WEBP"));
+        assertSniffs("image/heic", ascii("\0\0\0\030ftypheic"));
+    }
+
+    @Test
+    public void sniffsVideoAudioAndDocuments() {
+        assertSniffs("video/mp4", ascii("\0\0\0\030ftypisom"));
+        assertSniffs("video/quicktime", ascii("\0\0\0\024ftypqt  "));
+        assertSniffs("audio/mp4", ascii("\0\0\0\040ftypM4A "));
+        assertSniffs("video/webm", bytes(0x1A, 0x45, 0xDF, 0xA3));
+        assertSniffs("audio/wav", ascii("RIFF\0\0\0\0WAVE"));
+        assertSniffs("audio/ogg", ascii("OggS"));
+        assertSniffs("audio/mpeg", ascii("ID3\3"));
+        assertSniffs("application/pdf", ascii("%PDF-1.7"));
+        assertSniffs("application/zip", bytes('P', 'K', 3, 4));
+    }
+
+    @Test
+    public void unknownContentSniffsAsNull() {
+        assertSniffs(null, ascii("id,name\n1,a\n"));
+        assertSniffs(null, new byte[0]);
+        assertNull(MediaTypes.sniffImage(bytes('P', 'K', 3, 4), 4));
+    }
+
+    @Test
+    public void sniffsFilesFromTheirHeader() throws IOException {
+        File file = folder.newFile("no_extension");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(ascii("%PDF-1.4 rest of the document"));
+        } finally {
+            out.close();
+        }
+        assertEquals("application/pdf", MediaTypes.sniff(file));
+        assertNull(MediaTypes.sniffImage(file));
+    }
+
+    @Test
+    public void base64ExtensionComesFromTheContent() {
+        assertEquals(".png", MediaTypes.sniffBase64Extension(base64(bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')), null));
+        assertEquals(".pdf", MediaTypes.sniffBase64Extension(base64(ascii("%PDF-1.7")), "image/png"));
+    }
+
+    @Test
+    public void unsniffableBase64IsBinUnlessDeclared() {
+        String csv = base64(ascii("id,name\n1,a\n"));
+        assertEquals(".bin", MediaTypes.sniffBase64Extension(csv, null));
+        assertEquals(".csv", MediaTypes.sniffBase64Extension(csv, "text/csv"));
+        assertEquals(".bin", MediaTypes.sniffBase64Extension("%%%", null));
+    }
+
+    @Test
+    public void declaredTypeWinsOverZip() {
+        String zip = base64(bytes('P', 'K', 3, 4, 0, 0));
+        assertEquals(".zip", MediaTypes.sniffBase64Extension(zip, null));
+        assertEquals(".docx", MediaTypes.sniffBase64Extension(zip, DOCX));
+        assertEquals(DOCX, MediaTypes.resolve("application/zip", DOCX));
+        assertEquals("application/zip", MediaTypes.resolve("application/zip", ""));
+        assertEquals("image/png", MediaTypes.resolve("image/png", DOCX));
+        assertNull(MediaTypes.resolve(null, null));
+    }
+
+    @Test
+    public void extensionsForMimeTypes() {
+        assertEquals(".jpg", MediaTypes.extensionForMime("image/jpeg"));
+        assertEquals(".mp4", MediaTypes.extensionForMime("video/mp4"));
+        assertEquals(".xlsx", MediaTypes.extensionForMime("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        assertEquals(".png", MediaTypes.extensionForMime("image/x-unknown"));
+        assertEquals(".bin", MediaTypes.extensionForMime("application/octet-stream"));
+    }
+
+    @Test
+    public void commonTypeNarrowsToTypeFamilyOrAny() {
+        assertEquals("image/png", MediaTypes.commonType(Arrays.asList("image/png", "image/png")));
+        assertEquals("image/*", MediaTypes.commonType(Arrays.asList("image/png", "image/jpeg")));
+        assertEquals("*/*", MediaTypes.commonType(Arrays.asList("image/png", "video/mp4")));
+        assertEquals("*/*", MediaTypes.commonType(Arrays.asList("image/png", "application/octet-stream")));
+        assertEquals("*/*", MediaTypes.commonType(Arrays.asList("image/png", null)));
+        assertEquals("*/*", MediaTypes.commonType(Collections.<String>emptyList()));
+    }
+
+    private static void assertSniffs(String expected, byte[] header) {
+        assertEquals(expected, MediaTypes.sniff(header, header.length));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String base64(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+}
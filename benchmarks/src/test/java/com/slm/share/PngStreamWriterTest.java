@@ -0,0 +1,60 @@
+package com.slm.share;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+public class PngStreamWriterTest {
+
+    @Test
+    public void rowsWrittenInBlocksDecodeToTheSamePixels() throws IOException {
+        Random random = new Random(7);
+        int width = 317;
+        int height = 1003;
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            // Mostly smooth rows with noise, like a rendered page
+            pixels[i] = random.nextInt(4) == 0 ? random.nextInt() : (i / width) * 997;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngStreamWriter writer = new PngStreamWriter(out, width, height, Deflater.DEFAULT_COMPRESSION);
+        for (int y = 0; y < height; ) {
+            int rows = Math.min(height - y, 1 + random.nextInt(40));
+            writer.writeRows(pixels, y * width, width, rows);
+            y += rows;
+        }
+        writer.finish();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("pixel " + x + "," + y, pixels[y * width + x] & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsIncompleteImage() throws IOException {
+        PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 2, 2, Deflater.DEFAULT_COMPRESSION);
+        writer.writeRows(new int[4], 0, 2, 1);
+        writer.finish();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsExtraRows() throws IOException {
+        PngStreamWriter writer = new PngStreamWriter(new ByteArrayOutputStream(), 2, 1, Deflater.DEFAULT_COMPRESSION);
+        writer.writeRows(new int[4], 0, 2, 2);
+    }
+}
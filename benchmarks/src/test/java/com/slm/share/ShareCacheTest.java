@@ -0,0 +1,159 @@
+package com.slm.share;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShareCacheTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = new File(folder.getRoot(), "slm_share");
+    }
+
+    @Test
+    public void storeNamesFilesByKeyAndExtension() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+        File stored = cache.store("abc", ".png", out -> out.write(1));
+        assertEquals("abc.png", stored.getName());
+        assertEquals(dir, stored.getParentFile());
+    }
+
+    @Test
+    public void storeWritesAKeyOnce() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+        AtomicInteger writes = new AtomicInteger();
+        cache.store("abc", ".png", out -> out.write(writes.incrementAndGet()));
+        File again = cache.store("abc", ".png", out -> out.write(writes.incrementAndGet()));
+
+        assertEquals(1, writes.get());
+        assertEquals(1, again.length());
+        assertEquals(1, cache.stats().getLong("hits"));
+    }
+
+    @Test
+    public void unkeyedStoreIsNamedByContentHash() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+        byte[] bytes = "hola".getBytes(StandardCharsets.UTF_8);
+        File first = cache.store(null, ".txt", out -> out.write(bytes));
+        File second = cache.store(null, ".txt", out -> out.write(bytes));
+
+        assertEquals(ShareCache.toHex(ShareCache.newDigest().digest(bytes)) + ".txt", first.getName());
+        assertEquals(first, second);
+        // The temp file of the duplicate is dropped
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void lookupMissesOtherExtensions() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+        cache.store("abc", ".png", out -> out.write(1));
+        assertNotNull(cache.lookup("abc", ".png"));
+        assertNull(cache.lookup("abc", ".jpg"));
+    }
+
+    @Test
+    public void trimDeletesFilesPastTheAgeLimit() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, HOUR);
+        File old = file("old.png", 10, 2 * HOUR);
+        File recent = file("recent.png", 10, 10 * MINUTE);
+
+        assertEquals(10, cache.trim());
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsedUntilUnderTheSizeLimit() throws IOException {
+        ShareCache cache = new ShareCache(dir, 250, Long.MAX_VALUE);
+        File oldest = file("a.png", 100, 30 * MINUTE);
+        File middle = file("b.png", 100, 20 * MINUTE);
+        File newest = file("c.png", 100, 10 * MINUTE);
+
+        assertEquals(100, cache.trim());
+        assertFalse(oldest.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    public void trimKeepsFilesYoungerThanTheMinimumAge() throws IOException {
+        ShareCache cache = new ShareCache(dir, 0, 0);
+        File fresh = file("fresh.png", 100, MINUTE);
+
+        assertEquals(0, cache.trim());
+        assertTrue(fresh.exists());
+    }
+
+    @Test
+    public void trimKeepsPartialFilesUntilTheAgeLimit() throws IOException {
+        ShareCache cache = new ShareCache(dir, 0, HOUR);
+        File upload = file("upload_1_1.part", 100, 10 * MINUTE);
+        File abandoned = file("tmp_1_2.part", 100, 2 * HOUR);
+        File done = file("done.png", 100, 10 * MINUTE);
+
+        assertEquals(200, cache.trim());
+        assertTrue(upload.exists());
+        assertFalse(abandoned.exists());
+        assertFalse(done.exists());
+    }
+
+    @Test
+    public void clearKeepsPartialAndFreshFiles() throws IOException {
+        ShareCache cache = new ShareCache(dir, Long.MAX_VALUE, Long.MAX_VALUE);
+        File upload = file("upload_1_1.part", 100, 2 * HOUR);
+        File fresh = file("fresh.png", 100, MINUTE);
+        File old = file("old.png", 100, 10 * MINUTE);
+
+        assertEquals(100, cache.clear());
+        assertTrue(upload.exists());
+        assertTrue(fresh.exists());
+        assertFalse(old.exists());
+    }
+
+    @Test
+    public void lookupRefreshesTheLruPosition() throws IOException {
+        ShareCache cache = new ShareCache(dir, 150, Long.MAX_VALUE);
+        File used = file("used.png", 100, 30 * MINUTE);
+        File other = file("other.png", 100, 20 * MINUTE);
+
+        assertNotNull(cache.lookup("used", ".png"));
+        cache.trim();
+        assertTrue(used.exists());
+        assertFalse(other.exists());
+    }
+
+    private File file(String name, int length, long ageMs) throws IOException {
+        dir.mkdirs();
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        assertTrue(file.setLastModified(System.currentTimeMillis() - ageMs));
+        return file;
+    }
+}
@@ -0,0 +1,21 @@
+package com.slm.share;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShareTextTest {
+
+    @Test
+    public void joinsTextAndUrl() {
+        assertEquals("hola https://a.b", ShareText.join("hola", "https://a.b", " "));
+        assertEquals("hola\nhttps://a.b", ShareText.join("hola", "https://a.b", "\n"));
+    }
+
+    @Test
+    public void skipsWhicheverIsMissing() {
+        assertEquals("hola", ShareText.join("hola", null, " "));
+        assertEquals("https://a.b", ShareText.join("", "https://a.b", " "));
+        assertEquals("", ShareText.join(null, "", " "));
+    }
+}
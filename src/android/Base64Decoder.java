@@ -0,0 +1,126 @@
+package com.slm.share;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming base64 decoder with no Android dependencies. Decodes through two fixed buffers
+ * that are reused for the whole payload, so a large image costs no per-chunk allocation.
+ * Lenient like android.util.Base64.DEFAULT: characters outside the alphabet are skipped,
+ * decoding stops at the first '=' and missing padding is accepted.
+ */
+final class Base64Decoder {
+
+    /** Receives the time spent decoding and writing each chunk. */
+    interface Listener {
+        void onChunk(long decodeNanos, long writeNanos);
+    }
+
+    private static final int SKIP = -1;
+    private static final int PAD = -2;
+    private static final int[] ALPHABET = new int[256];
+
+    static {
+        Arrays.fill(ALPHABET, SKIP);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < chars.length(); i++) ALPHABET[chars.charAt(i)] = i;
+        ALPHABET['='] = PAD;
+    }
+
+    private Base64Decoder() {
+    }
+
+    /**
+     * Decodes the text into the stream, reading chunkChars characters per step.
+     * Returns the number of bytes written. Throws IllegalArgumentException when the
+     * text ends in a partial quantum that cannot hold a byte.
+     */
+    static long decode(String base64, OutputStream out, int chunkChars, Listener listener) throws IOException {
+        if (chunkChars <= 0) throw new IllegalArgumentException("chunkChars debe ser positivo: " + chunkChars);
+        char[] chars = new char[chunkChars];
+        // Up to three characters of a quantum carry over from the previous chunk
+        byte[] decoded = new byte[(chunkChars + 3) / 4 * 3 + 3];
+        int bits = 0;
+        int quantum = 0;
+        long written = 0;
+
+        int length = base64.length();
+        boolean padded = false;
+        for (int offset = 0; offset < length && !padded; offset += chars.length) {
+            long start = System.nanoTime();
+            int count = Math.min(chars.length, length - offset);
+            base64.getChars(offset, offset + count, chars, 0);
+
+            int produced = 0;
+            for (int i = 0; i < count; i++) {
+                char c = chars[i];
+                int value = c < 256 ? ALPHABET[c] : SKIP;
+                if (value == SKIP) continue;
+                if (value == PAD) {
+                    padded = true;
+                    break;
+                }
+                bits = (bits << 6) | value;
+                if (++quantum == 4) {
+                    decoded[produced++] = (byte) (bits >> 16);
+                    decoded[produced++] = (byte) (bits >> 8);
+                    decoded[produced++] = (byte) bits;
+                    bits = 0;
+                    quantum = 0;
+                }
+            }
+            if (padded || offset + count >= length) {
+                produced += finish(bits, quantum, decoded, produced);
+                quantum = 0;
+            }
+
+            long decodedAt = System.nanoTime();
+            out.write(decoded, 0, produced);
+            written += produced;
+            if (listener != null) listener.onChunk(decodedAt - start, System.nanoTime() - decodedAt);
+        }
+        return written;
+    }
+
+    /** Decodes the first bytes of the payload, for sniffing its type without decoding it all. */
+    static byte[] decodeHead(String base64, int maxBytes) {
+        byte[] head = new byte[maxBytes + 2];
+        int produced = 0;
+        int bits = 0;
+        int quantum = 0;
+        for (int i = 0; i < base64.length() && produced < maxBytes; i++) {
+            char c = base64.charAt(i);
+            int value = c < 256 ? ALPHABET[c] : SKIP;
+            if (value == SKIP) continue;
+            if (value == PAD) break;
+            bits = (bits << 6) | value;
+            if (++quantum == 4) {
+                head[produced++] = (byte) (bits >> 16);
+                head[produced++] = (byte) (bits >> 8);
+                head[produced++] = (byte) bits;
+                bits = 0;
+                quantum = 0;
+            }
+        }
+        if (produced < maxBytes) produced += finish(bits, quantum, head, produced);
+        return Arrays.copyOf(head, Math.min(produced, maxBytes));
+    }
+
+    /** Flushes a trailing partial quantum, returns the number of bytes it held. */
+    private static int finish(int bits, int quantum, byte[] target, int position) {
+        switch (quantum) {
+            case 0:
+                return 0;
+            case 2:
+                target[position] = (byte) (bits >> 4);
+                return 1;
+            case 3:
+                target[position] = (byte) (bits >> 10);
+                target[position + 1] = (byte) (bits >> 2);
+                return 2;
+            default:
+                throw new IllegalArgumentException("bad base-64");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.slm.share;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Size-keyed pool of screenshot bitmaps and their canvases, so repeated captures reuse
+ * the same allocation instead of churning the heap. Bounded by a byte cap and flushed
+ * whenever the captured view changes size.
+ */
+final class BitmapPool {
+
+    /** A pooled bitmap with the canvas that draws into it. */
+    static final class Entry {
+        final Bitmap bitmap;
+        final Canvas canvas;
+        // View size the pool had when the entry was handed out
+        int viewWidth;
+        int viewHeight;
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.canvas = new Canvas(bitmap);
+        }
+
+        long byteCount() {
+            return bitmap.getAllocationByteCount();
+        }
+    }
+
+    private final long maxBytes;
+    private final ArrayDeque<Entry> free = new ArrayDeque<>();
+    private long pooledBytes;
+    private int viewWidth;
+    private int viewHeight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Returns a cleared bitmap of the exact size and config, allocating only on a miss. */
+    synchronized Entry acquire(int width, int height, Bitmap.Config config) {
+        Iterator<Entry> it = free.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            Bitmap bitmap = entry.bitmap;
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                it.remove();
+                pooledBytes -= entry.byteCount();
+                hits++;
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return tag(entry);
+            }
+        }
+        misses++;
+        return tag(new Entry(Bitmap.createBitmap(width, height, config)));
+    }
+
+    private Entry tag(Entry entry) {
+        entry.viewWidth = viewWidth;
+        entry.viewHeight = viewHeight;
+        return entry;
+    }
+
+    /**
+     * Hands a bitmap back, evicting the least recently released ones above the cap. A bitmap
+     * acquired before the view changed size is recycled, it would not be reused.
+     */
+    synchronized void release(Entry entry) {
+        if (entry.bitmap.isRecycled()) return;
+        if (entry.byteCount() > maxBytes || entry.viewWidth != viewWidth || entry.viewHeight != viewHeight) {
+            entry.bitmap.recycle();
+            evictions++;
+            return;
+        }
+
+        free.addFirst(entry);
+        pooledBytes += entry.byteCount();
+        while (pooledBytes > maxBytes) {
+            Entry oldest = free.removeLast();
+            pooledBytes -= oldest.byteCount();
+            oldest.bitmap.recycle();
+            evictions++;
+        }
+    }
+
+    /** Drops every pooled bitmap when the view no longer has the size they were made for. */
+    synchronized void onViewSize(int width, int height) {
+        if (width != viewWidth || height != viewHeight) {
+            clear();
+            viewWidth = width;
+            viewHeight = height;
+        }
+    }
+
+    synchronized void clear() {
+        for (Entry entry : free) entry.bitmap.recycle();
+        evictions += free.size();
+        free.clear();
+        pooledBytes = 0;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("pooled", free.size());
+        stats.put("pooledBytes", pooledBytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+}
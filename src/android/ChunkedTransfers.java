@@ -0,0 +1,137 @@
+package com.slm.share;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Payloads sent from JS in chunks instead of one bridge argument. Each transfer streams into
+ * a temp file in the share cache while its SHA-1 is computed, and commit moves it in under
+ * that hash. Chunks must arrive in order; the caller serializes the writes.
+ */
+final class ChunkedTransfers {
+
+    /** One transfer in progress. */
+    static final class Transfer {
+        final String id;
+        final long expectedBytes;
+        final String mimeType;
+        final AtomicInteger queued = new AtomicInteger();
+        private final File file;
+        private final MessageDigest digest;
+        private final OutputStream out;
+        private int nextSeq;
+        private long bytes;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        Transfer(String id, File file, long expectedBytes, String mimeType) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.expectedBytes = expectedBytes;
+            this.mimeType = mimeType;
+            this.digest = ShareCache.newDigest();
+            this.out = new DigestOutputStream(new FileOutputStream(file), digest);
+        }
+    }
+
+    private final ShareCache cache;
+    private final Map<String, Transfer> transfers = new ConcurrentHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    ChunkedTransfers(ShareCache cache) {
+        this.cache = cache;
+    }
+
+    /** Opens a transfer; expectedBytes of 0 skips the size check at commit. */
+    Transfer begin(long expectedBytes, String mimeType) throws IOException {
+        String id = "tx_" + System.currentTimeMillis() + "_" + sequence.incrementAndGet();
+        Transfer transfer = new Transfer(id, cache.newFile("upload_", ".part"), expectedBytes, mimeType);
+        transfers.put(id, transfer);
+        return transfer;
+    }
+
+    Transfer get(String id) {
+        return id != null ? transfers.get(id) : null;
+    }
+
+    /** Decodes a base64 chunk straight into the transfer file, returns the bytes written so far. */
+    long append(Transfer transfer, int seq, String base64, int chunkChars) throws IOException {
+        synchronized (transfer) {
+            if (seq != transfer.nextSeq) {
+                throw new IllegalArgumentException("Chunk fuera de orden: se esperaba " + transfer.nextSeq + " y llego " + seq);
+            }
+            transfer.bytes += Base64Decoder.decode(base64, transfer.out, chunkChars, null);
+            transfer.nextSeq++;
+            transfer.lastActivity = System.currentTimeMillis();
+            return transfer.bytes;
+        }
+    }
+
+    /**
+     * Closes the transfer and moves its file into the cache under its content hash, with the
+     * extension of the sniffed type, or of the declared one when sniffing finds nothing or
+     * only a zip container.
+     */
+    File commit(Transfer transfer) throws IOException {
+        transfers.remove(transfer.id);
+        synchronized (transfer) {
+            try {
+                transfer.out.close();
+                if (transfer.expectedBytes > 0 && transfer.bytes != transfer.expectedBytes) {
+                    throw new IllegalArgumentException("Transferencia incompleta: " + transfer.bytes + " de "
+                            + transfer.expectedBytes + " bytes");
+                }
+                String mimeType = MediaTypes.resolve(MediaTypes.sniff(transfer.file), transfer.mimeType);
+                String extension = mimeType != null ? MediaTypes.extensionForMime(mimeType) : ".bin";
+                return cache.adopt(transfer.file, ShareCache.toHex(transfer.digest.digest()), extension);
+            } finally {
+                if (transfer.file.exists()) transfer.file.delete();
+            }
+        }
+    }
+
+    boolean abort(String id) {
+        Transfer transfer = id != null ? transfers.remove(id) : null;
+        if (transfer == null) return false;
+        discard(transfer);
+        return true;
+    }
+
+    /** Aborts transfers without a chunk for longer than idleMs, returns how many were dropped. */
+    int expireIdle(long idleMs) {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (Transfer transfer : transfers.values()) {
+            if (now - transfer.lastActivity > idleMs && transfers.remove(transfer.id, transfer)) {
+                discard(transfer);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    boolean isEmpty() {
+        return transfers.isEmpty();
+    }
+
+    void abortAll() {
+        for (String id : transfers.keySet()) abort(id);
+    }
+
+    private static void discard(Transfer transfer) {
+        synchronized (transfer) {
+            try {
+                transfer.out.close();
+            } catch (IOException e) {
+                // Deleted below either way
+            }
+            transfer.file.delete();
+        }
+    }
+}
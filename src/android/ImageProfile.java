@@ -0,0 +1,45 @@
+package com.slm.share;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+/**
+ * Output limits a share target puts on images: longest side, format, quality and a byte
+ * budget. Images already inside the limits are shared untouched.
+ */
+final class ImageProfile {
+
+    final int maxDimension;
+    final String format;
+    final int quality;
+    final long maxBytes;
+
+    ImageProfile(int maxDimension, String format, int quality, long maxBytes) {
+        this.maxDimension = Math.max(0, maxDimension);
+        this.format = format != null ? format.toLowerCase(Locale.US).replace("jpg", "jpeg") : null;
+        this.quality = Math.max(1, Math.min(100, quality));
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /** Reads a profile from a target definition, null when it sets none of the limits. */
+    static ImageProfile fromJSON(JSONObject definition, int defaultQuality) {
+        int maxDimension = definition.optInt("maxDimension", 0);
+        String format = definition.optString("format", null);
+        long maxBytes = definition.optLong("maxBytes", 0);
+        if (maxDimension <= 0 && format == null && maxBytes <= 0) return null;
+        return new ImageProfile(maxDimension, format, definition.optInt("quality", defaultQuality), maxBytes);
+    }
+
+    /** Whether an image with these properties can be shared as it is. */
+    boolean accepts(int width, int height, String mimeType, long length) {
+        if (maxDimension > 0 && Math.max(width, height) > maxDimension) return false;
+        if (format != null && !("image/" + format).equals(mimeType)) return false;
+        return maxBytes <= 0 || length <= maxBytes;
+    }
+
+    /** Stable name of the limits, part of the cache key of every transcoded image. */
+    String key() {
+        return "d" + maxDimension + "_" + (format != null ? format : "src") + "_q" + quality + "_b" + maxBytes;
+    }
+}
@@ -0,0 +1,224 @@
+package com.slm.share;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Media type detection from magic bytes (images, video, audio and common documents) and the
+ * MIME type to file extension mapping the FileProvider relies on to report a shared type.
+ */
+final class MediaTypes {
+
+    private MediaTypes() {
+    }
+
+    private static final int HEADER_BYTES = 16;
+
+    /** Detects the image type from the first bytes of a file, null when it is not a known format. */
+    static String sniffImage(File file) throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        return sniffImage(header, readHeader(file, header));
+    }
+
+    /** Detects any known type from the first bytes of a file, null when nothing matches. */
+    static String sniff(File file) throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        return sniff(header, readHeader(file, header));
+    }
+
+    static String sniff(byte[] header, int length) {
+        String image = sniffImage(header, length);
+        if (image != null) return image;
+
+        if (length >= 12 && header[4] == 'f' && header[5] == 't' && header[6] == 'y' && header[7] == 'p') {
+            String brand = new String(header, 8, 4, StandardCharsets.US_ASCII);
+            if (brand.startsWith("avi")) return "image/avif";
+            if (brand.equals("qt  ")) return "video/quicktime";
+            if (brand.startsWith("3g")) return "video/3gpp";
+            if (brand.startsWith("M4A") || brand.startsWith("M4B")) return "audio/mp4";
+            return "video/mp4";
+        }
+        if (length >= 4 && (header[0] & 0xFF) == 0x1A && (header[1] & 0xFF) == 0x45
+                && (header[2] & 0xFF) == 0xDF && (header[3] & 0xFF) == 0xA3) {
+            return "video/webm";
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F') {
+            if (header[8] == 'W' && header[9] == 'A' && header[10] == 'V' && header[11] == 'E') return "audio/wav";
+            if (header[8] == 'A' && header[9] == 'V' && header[10] == 'I') return "video/x-msvideo";
+        }
+        if (length >= 5 && header[0] == '%' && header[1] == 'P' && header[2] == 'D' && header[3] == 'F' && header[4] == '-') {
+            return "application/pdf";
+        }
+        if (length >= 4 && header[0] == 'O' && header[1] == 'g' && header[2] == 'g' && header[3] == 'S') {
+            return "audio/ogg";
+        }
+        if (length >= 3 && header[0] == 'I' && header[1] == 'D' && header[2] == '3') {
+            return "audio/mpeg";
+        }
+        if (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xF6) == 0xF0) {
+            return "audio/aac";
+        }
+        if (length >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xE0) == 0xE0) {
+            return "audio/mpeg";
+        }
+        if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            return "application/zip";
+        }
+        return null;
+    }
+
+    static String sniffImage(byte[] header, int length) {
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return "image/png";
+        }
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return "image/gif";
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        if (length >= 12 && header[4] == 'f' && header[5] == 't' && header[6] == 'y' && header[7] == 'p') {
+            String brand = new String(header, 8, 4, StandardCharsets.US_ASCII);
+            if (brand.startsWith("hei") || brand.startsWith("hev") || brand.equals("mif1")) return "image/heic";
+        }
+        return null;
+    }
+
+    /**
+     * Extension for a base64 payload, sniffed from its first decoded bytes and reconciled with
+     * the declared type (see {@link #resolve}); .bin when neither identifies it.
+     */
+    static String sniffBase64Extension(String base64, String declaredMimeType) {
+        String sniffed;
+        try {
+            byte[] header = Base64Decoder.decodeHead(base64, HEADER_BYTES);
+            sniffed = sniff(header, header.length);
+        } catch (IllegalArgumentException e) {
+            sniffed = null;
+        }
+        String mimeType = resolve(sniffed, declaredMimeType);
+        return mimeType != null ? extensionForMime(mimeType) : ".bin";
+    }
+
+    /**
+     * The sniffed type, unless a declared one says more: zip is also the container of docx,
+     * xlsx, pptx, odt and epub, so a declared type wins over a zip match. Null when both are.
+     */
+    static String resolve(String sniffed, String declaredMimeType) {
+        boolean declared = declaredMimeType != null && !declaredMimeType.isEmpty();
+        if (sniffed == null || ("application/zip".equals(sniffed) && declared)) {
+            return declared ? declaredMimeType : null;
+        }
+        return sniffed;
+    }
+
+    /** Extension for a MIME type: .png for unknown images, .bin for anything else unknown. */
+    static String extensionForMime(String mimeType) {
+        switch (mimeType) {
+            case "image/png":
+                return ".png";
+            case "image/jpeg":
+                return ".jpg";
+            case "image/gif":
+                return ".gif";
+            case "image/webp":
+                return ".webp";
+            case "image/heic":
+                return ".heic";
+            case "image/avif":
+                return ".avif";
+            case "video/mp4":
+                return ".mp4";
+            case "video/quicktime":
+                return ".mov";
+            case "video/3gpp":
+                return ".3gp";
+            case "video/webm":
+                return ".webm";
+            case "video/x-msvideo":
+                return ".avi";
+            case "audio/mp4":
+                return ".m4a";
+            case "audio/mpeg":
+                return ".mp3";
+            case "audio/aac":
+                return ".aac";
+            case "audio/ogg":
+                return ".ogg";
+            case "audio/wav":
+                return ".wav";
+            case "application/pdf":
+                return ".pdf";
+            case "application/zip":
+                return ".zip";
+            case "application/vnd.openxmlformats-officedocument.wordprocessingml.document":
+                return ".docx";
+            case "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet":
+                return ".xlsx";
+            case "application/vnd.openxmlformats-officedocument.presentationml.presentation":
+                return ".pptx";
+            case "application/vnd.oasis.opendocument.text":
+                return ".odt";
+            case "application/epub+zip":
+                return ".epub";
+            case "application/msword":
+                return ".doc";
+            case "application/vnd.ms-excel":
+                return ".xls";
+            case "application/json":
+                return ".json";
+            case "text/csv":
+                return ".csv";
+            case "text/html":
+                return ".html";
+            case "text/plain":
+                return ".txt";
+            default:
+                return mimeType.startsWith("image/") ? ".png" : ".bin";
+        }
+    }
+
+    /**
+     * Type for the send intent of several streams: the shared type, else the shared family
+     * (video/*), else any. A stream of unknown type makes it any.
+     */
+    static String commonType(Iterable<String> mimeTypes) {
+        String common = null;
+        for (String mimeType : mimeTypes) {
+            if (mimeType == null || "application/octet-stream".equals(mimeType)) return "*/*";
+            if (common == null || common.equals(mimeType)) {
+                common = mimeType;
+                continue;
+            }
+            String family = familyOf(common);
+            if (!family.equals(familyOf(mimeType))) return "*/*";
+            common = family + "/*";
+        }
+        return common != null ? common : "*/*";
+    }
+
+    private static String familyOf(String mimeType) {
+        int slash = mimeType.indexOf('/');
+        return slash > 0 ? mimeType.substring(0, slash) : mimeType;
+    }
+
+    private static int readHeader(File file, byte[] header) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int length = 0;
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.slm.share;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an opaque RGB PNG row by row, so an image taller than any bitmap that fits in memory
+ * can be encoded from tiles. Rows go through the Sub filter into one deflate stream that is
+ * cut into bounded IDAT chunks; memory stays at one row plus the chunk buffer. No Android
+ * dependencies.
+ */
+final class PngStreamWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int FILTER_SUB = 1;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final byte[] row;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idat;
+    private int rowsWritten;
+    private boolean closed;
+
+    PngStreamWriter(OutputStream out, int width, int height, int compressionLevel) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Tamano invalido: " + width + "x" + height);
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + width * BYTES_PER_PIXEL];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;  // bit depth
+        header[9] = 2;  // truecolor, no alpha
+        writeChunk("IHDR", header, header.length);
+
+        deflater = new Deflater(compressionLevel);
+        idat = new DeflaterOutputStream(new IdatStream(), deflater, CHUNK_BYTES);
+    }
+
+    /**
+     * Appends rows of ARGB pixels, as Bitmap.getPixels returns them: pixel (x, r) of the block
+     * is pixels[offset + r * stride + x]. Alpha is dropped.
+     */
+    void writeRows(int[] pixels, int offset, int stride, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IllegalStateException("Filas de mas: " + (rowsWritten + rows) + " de " + height);
+        }
+        for (int r = 0; r < rows; r++) {
+            int start = offset + r * stride;
+            row[0] = FILTER_SUB;
+            int previousR = 0;
+            int previousG = 0;
+            int previousB = 0;
+            for (int x = 0, i = 1; x < width; x++, i += BYTES_PER_PIXEL) {
+                int pixel = pixels[start + x];
+                int red = (pixel >> 16) & 0xFF;
+                int green = (pixel >> 8) & 0xFF;
+                int blue = pixel & 0xFF;
+                row[i] = (byte) (red - previousR);
+                row[i + 1] = (byte) (green - previousG);
+                row[i + 2] = (byte) (blue - previousB);
+                previousR = red;
+                previousG = green;
+                previousB = blue;
+            }
+            idat.write(row);
+        }
+        rowsWritten += rows;
+    }
+
+    int rowsWritten() {
+        return rowsWritten;
+    }
+
+    /** Finishes the image; fails when fewer rows than the declared height were written. */
+    void finish() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (rowsWritten != height) {
+                throw new IllegalStateException("Imagen incompleta: " + rowsWritten + " de " + height + " filas");
+            }
+            idat.finish();
+            idat.flush();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Releases the deflater without completing the image, after a failure. */
+    void abort() {
+        if (closed) return;
+        closed = true;
+        deflater.end();
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] prefix = new byte[8];
+        putInt(prefix, 0, length);
+        System.arraycopy(typeBytes, 0, prefix, 4, 4);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] suffix = new byte[4];
+        putInt(suffix, 0, (int) crc.getValue());
+
+        out.write(prefix);
+        out.write(data, 0, length);
+        out.write(suffix);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    /** Collects deflated bytes and emits them as IDAT chunks of at most CHUNK_BYTES. */
+    private final class IdatStream extends OutputStream {
+        private final byte[] buffer = new byte[CHUNK_BYTES];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) flushChunk();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) flushChunk();
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushChunk();
+            out.flush();
+        }
+
+        private void flushChunk() throws IOException {
+            if (count == 0) return;
+            writeChunk("IDAT", buffer, count);
+            count = 0;
+        }
+    }
+}
@@ -2,58 +2,247 @@ package com.slm.share;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
+import android.view.PixelCopy;
+import android.webkit.MimeTypeMap;
 import android.webkit.WebView;
 
+import androidx.annotation.RequiresApi;
 import androidx.core.content.FileProvider;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
 public class SLMShare extends CordovaPlugin {
 
     private static final String TAG = "SLMShare";
     private static final int SHARE_REQUEST = 300;
+    private static final int MAX_PENDING_SHARES = 0xFF;
+    // Base64 characters decoded per step, the decoder reuses its buffers across steps
+    private static final int BASE64_CHUNK = 64 * 1024;
+    private static final int DEFAULT_QUALITY = 90;
+    // Upper bound for pooled screenshot bitmaps, roughly four full-HD ARGB frames
+    private static final long BITMAP_POOL_MAX_BYTES = 32L * 1024 * 1024;
+    // Full-page captures stop at this height in px, a safeguard for endless pages
+    private static final int FULL_PAGE_MAX_HEIGHT = 20000;
+    // Time the WebView gets to raster a tile after scrolling
+    private static final long FULL_PAGE_SETTLE_MS = 120;
+    // Rows of pixels read from a tile per step when streaming it into the full-page PNG
+    private static final int FULL_PAGE_PIXEL_ROWS = 16;
+    // Prepared shares live no longer than the cache protects fresh files
+    private static final long PREPARED_SHARE_TTL_MS = 5 * 60 * 1000L;
+    private static final int MAX_PREPARED_SHARES = 16;
+    // Byte-budget passes of a transcode, and the lowest quality they may go to
+    private static final int TRANSCODE_MAX_PASSES = 6;
+    private static final int TRANSCODE_MIN_QUALITY = 50;
+    // Large copies go in slices of this size so progress can be reported between them,
+    // and progress updates are sent no more often than every PROGRESS_INTERVAL_MS
+    private static final long COPY_SLICE_BYTES = 8L * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // Chunked transfers: bytes per chunk and chunks in flight the JS side is told to use,
+    // chunks queued natively before appendChunk pushes back, idle time before a transfer is dropped
+    private static final int TRANSFER_CHUNK_BYTES = 256 * 1024;
+    private static final int TRANSFER_WINDOW = 4;
+    private static final int TRANSFER_MAX_QUEUED = 8;
+    private static final long TRANSFER_IDLE_MS = 2 * 60 * 1000L;
+    // Gallery batches run on their own threads, apart from share staging, and publish their
+    // IS_PENDING rows in groups of this size so a killed batch still leaves what it saved
+    private static final int GALLERY_THREADS = 2;
+    private static final int GALLERY_PUBLISH_GROUP = 16;
+
+    // Open choosers by request code, so overlapping shares each resolve their own callback
+    private final Map<Integer, PendingShare> pendingShares = new ConcurrentHashMap<>();
+    private final AtomicInteger requestSequence = new AtomicInteger();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile PendingShare lastLaunchedShare;
+    private final Map<String, PreparedShare> preparedShares = new ConcurrentHashMap<>();
+    private final AtomicInteger preparedSequence = new AtomicInteger();
+    private final AtomicInteger gallerySequence = new AtomicInteger();
+    private volatile JSONObject availableApps;
+    private final AtomicInteger availableAppsGeneration = new AtomicInteger();
+    // Serializes the PackageManager lookups of getAvailableApps without holding the plugin monitor
+    private final Object availableAppsLock = new Object();
+    private BroadcastReceiver packageReceiver;
+    private final ShareTargets shareTargets = new ShareTargets();
+    private ExecutorService stagingExecutor;
+    private ExecutorService transferExecutor;
+    private ExecutorService galleryExecutor;
+    private final AtomicBoolean transferSweepScheduled = new AtomicBoolean();
+    private final Runnable transferSweep = this::sweepTransfers;
+    private ChunkedTransfers transfers;
+    private ShareCache shareCache;
+    private ShareMetrics metrics;
+    private final BitmapPool bitmapPool =
+            new BitmapPool(Math.min(BITMAP_POOL_MAX_BYTES, Runtime.getRuntime().maxMemory() / 8));
 
-    private CallbackContext shareCallback;
+    @Override
+    protected void pluginInitialize() {
+        long cacheMaxBytes = preferences.getInteger("SLMShareCacheMaxMB", 50) * 1024L * 1024L;
+        long cacheMaxAgeMs = preferences.getInteger("SLMShareCacheMaxAgeHours", 24) * 60L * 60L * 1000L;
+        shareCache = new ShareCache(new File(cordova.getActivity().getCacheDir(), "slm_share"), cacheMaxBytes, cacheMaxAgeMs);
+        cordova.getThreadPool().execute(shareCache::trim);
+        transfers = new ChunkedTransfers(shareCache);
+        metrics = new ShareMetrics(preferences.getBoolean("SLMShareTrace", false));
+
+        // Installs and removals change which share targets exist
+        packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                shareTargets.invalidate();
+                invalidateAvailableApps();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        cordova.getActivity().getApplicationContext().registerReceiver(packageReceiver, filter);
+
+        // Prewarm so the first getAvailableApps call is already a cache hit
+        cordova.getThreadPool().execute(() -> {
+            try {
+                loadAvailableApps();
+            } catch (JSONException e) {
+                Log.e(TAG, "getAvailableApps prewarm error: " + e.getMessage());
+            }
+        });
+    }
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        MeteredCallback metered = new MeteredCallback(action, callbackContext);
+        metrics.beginSection(action);
+        try {
+            boolean handled = dispatch(action, args, metered);
+            metered.dispatched(handled);
+            return handled;
+        } finally {
+            metrics.endSection();
+        }
+    }
+
+    private boolean dispatch(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
         switch (action) {
             case "share":
                 share(args.optJSONObject(0), callbackContext);
                 return true;
+            case "prepareShare":
+                prepareShare(args.optJSONObject(0), callbackContext);
+                return true;
+            case "releaseShare":
+                releasePreparedShare(args.optString(0, null), callbackContext);
+                return true;
+            case "beginTransfer":
+                beginTransfer(args.optJSONObject(0), callbackContext);
+                return true;
+            case "appendChunk":
+                appendChunk(args.optString(0, null), args.optInt(1, -1), args.optString(2, ""), callbackContext);
+                return true;
+            case "commit":
+                commitTransfer(args.optString(0, null), callbackContext);
+                return true;
+            case "abortTransfer":
+                JSONObject aborted = new JSONObject();
+                aborted.put("aborted", transfers.abort(args.optString(0, null)));
+                callbackContext.success(aborted);
+                return true;
             case "shareToApp":
                 shareToApp(args.optJSONObject(0), callbackContext);
                 return true;
+            case "registerTarget":
+                registerTarget(args.optJSONObject(0), callbackContext);
+                return true;
             case "getAvailableApps":
                 getAvailableApps(callbackContext);
                 return true;
             case "shareScreenshot":
                 shareScreenshot(args.optJSONObject(0), callbackContext);
                 return true;
+            case "saveManyToGallery":
+                saveManyToGallery(args.optJSONArray(0), args.optJSONObject(1), callbackContext);
+                return true;
+            case "getBitmapPoolStats":
+                callbackContext.success(bitmapPool.stats());
+                return true;
+            case "cancelShare":
+                cancelShare(args.optString(0, null), callbackContext);
+                return true;
+            case "getMetrics":
+                callbackContext.success(metrics.toJSON());
+                return true;
+            case "resetMetrics":
+                metrics.reset();
+                callbackContext.success();
+                return true;
+            case "getCacheStats":
+                callbackContext.success(shareCache.stats());
+                return true;
+            case "clearCache":
+                cordova.getThreadPool().execute(() -> {
+                    try {
+                        JSONObject result = new JSONObject();
+                        result.put("freedBytes", shareCache.clear());
+                        callbackContext.success(result);
+                    } catch (JSONException e) {
+                        callbackContext.error("Error limpiando cache: " + e.getMessage());
+                    }
+                });
+                return true;
             case "saveToGallery":
-                saveToGallery(args.optString(0, ""), callbackContext);
+                saveToGallery(args.optString(0, ""), args.optJSONObject(1), callbackContext);
                 return true;
             default:
                 return false;
@@ -67,45 +256,157 @@ public class SLMShare extends CordovaPlugin {
     private void share(JSONObject options, CallbackContext callbackContext) {
         if (options == null) options = new JSONObject();
 
-        final String text = options.optString("text", null);
-        final String url = options.optString("url", null);
-        final String imageBase64 = options.optString("image", null);
-        final String title = options.optString("title", "Compartir");
+        final String handle = options.optString("handle", null);
+        final String requestId = options.optString("requestId", null);
+        final long timeoutMs = options.optLong("timeout", 0);
+        final StageTimer timer = timerFor(callbackContext);
+        // Registered now, so cancelShare and the timeout also cover the staging below
+        try {
+            registerShare(requestId, timeoutMs, timer, callbackContext);
+        } catch (IllegalStateException e) {
+            callbackContext.error("Error al compartir: " + e.getMessage());
+            return;
+        }
+        if (handle != null) {
+            sharePrepared(handle, timer, callbackContext);
+            return;
+        }
 
+        final JSONObject content = options;
         final Activity activity = cordova.getActivity();
-        final JSONObject opts = options;
 
-        activity.runOnUiThread(() -> {
+        final CopyProgress progress = options.optBoolean("progress", false) ? new CopyProgress(callbackContext) : null;
+
+        // Decode, write and build on the thread pool, only the chooser goes to the UI thread
+        cordova.getThreadPool().execute(() -> {
             try {
-                Intent shareIntent = new Intent(Intent.ACTION_SEND);
-
-                // Build share text
-                StringBuilder shareText = new StringBuilder();
-                if (text != null && !text.isEmpty()) shareText.append(text);
-                if (url != null && !url.isEmpty()) {
-                    if (shareText.length() > 0) shareText.append(" ");
-                    shareText.append(url);
+                final Intent chooser = buildShareChooser(content, activity, timer, progress);
+                if (chooser == null) {
+                    callbackContext.error("No hay contenido para compartir");
+                    return;
                 }
-
-                if (imageBase64 != null && !imageBase64.isEmpty()) {
-                    Uri imageUri = saveBase64ToCache(imageBase64, activity);
-                    if (imageUri != null) {
-                        shareIntent.setType("image/*");
-                        shareIntent.putExtra(Intent.EXTRA_STREAM, imageUri);
-                        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                activity.runOnUiThread(() -> {
+                    try {
+                        timer.start();
+                        startChooser(chooser, callbackContext);
+                        timer.stop("intent");
+                    } catch (Exception e) {
+                        Log.e(TAG, "Share error: " + e.getMessage());
+                        callbackContext.error("Error al compartir: " + e.getMessage());
                     }
-                } else {
-                    shareIntent.setType("text/plain");
-                }
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Share error: " + e.getMessage());
+                callbackContext.error("Error al compartir: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stages the text, url, image and files options and wraps them in a chooser. The intent
+     * type comes from the staged files (see mimeTypeOf) unless mimeType is given. Null when
+     * nothing could be staged and there is no text. Background thread.
+     */
+    private Intent buildShareChooser(JSONObject options, Activity activity, StageTimer timer, CopyProgress progress) {
+        String text = options.optString("text", null);
+        String url = options.optString("url", null);
+        String imageBase64 = options.optString("image", null);
+        JSONArray files = options.optJSONArray("files");
+        String title = options.optString("title", "Compartir");
+        String mimeType = options.optString("mimeType", null);
+
+        ArrayList<Uri> streams = new ArrayList<>();
+        if (files != null && files.length() > 0) {
+            streams.addAll(stageFiles(files, mimeType, activity, timer, progress));
+        } else if (imageBase64 != null && !imageBase64.isEmpty()) {
+            Uri imageUri = stageFile(imageBase64, mimeType, activity, timer, progress);
+            if (imageUri != null) streams.add(imageUri);
+        }
+
+        String shareText = ShareText.join(text, url, " ");
+        if (streams.isEmpty() && shareText.isEmpty()) return null;
+
+        timer.start();
+        if (mimeType == null && !streams.isEmpty()) {
+            List<String> types = new ArrayList<>();
+            for (Uri stream : streams) types.add(mimeTypeOf(stream, activity));
+            mimeType = MediaTypes.commonType(types);
+        }
+        Intent shareIntent = new Intent(streams.size() > 1 ? Intent.ACTION_SEND_MULTIPLE : Intent.ACTION_SEND);
+        if (streams.size() > 1) {
+            shareIntent.setType(mimeType);
+            shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, streams);
+            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } else if (streams.size() == 1) {
+            shareIntent.setType(mimeType);
+            shareIntent.putExtra(Intent.EXTRA_STREAM, streams.get(0));
+            shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } else {
+            shareIntent.setType("text/plain");
+        }
+
+        if (!shareText.isEmpty()) {
+            shareIntent.putExtra(Intent.EXTRA_TEXT, shareText);
+        }
+        Intent chooser = Intent.createChooser(shareIntent, title);
+        timer.stop("build");
+        return chooser;
+    }
+
+    // ============================================
+    // prepareShare
+    // ============================================
+
+    /**
+     * Stages a share ahead of the tap: cache files written, URIs granted and the chooser built.
+     * The returned handle is spent by share({ handle }) or dropped when it expires.
+     */
+    private void prepareShare(JSONObject options, CallbackContext callbackContext) {
+        if (options == null) options = new JSONObject();
+
+        final JSONObject content = options;
+        // Capped so the staged files are still protected from cache trimming when used
+        final long ttlMs = Math.min(options.optLong("ttl", PREPARED_SHARE_TTL_MS), PREPARED_SHARE_TTL_MS);
+        final Activity activity = cordova.getActivity();
+        final StageTimer timer = timerFor(callbackContext);
+        final CopyProgress progress = options.optBoolean("progress", false) ? new CopyProgress(callbackContext) : null;
 
-                if (shareText.length() > 0) {
-                    shareIntent.putExtra(Intent.EXTRA_TEXT, shareText.toString());
+        cordova.getThreadPool().execute(() -> {
+            try {
+                Intent chooser = buildShareChooser(content, activity, timer, progress);
+                if (chooser == null) {
+                    callbackContext.error("No hay contenido para compartir");
+                    return;
                 }
+                PreparedShare prepared = new PreparedShare("prep_" + preparedSequence.incrementAndGet(), chooser);
+                storePreparedShare(prepared, ttlMs > 0 ? ttlMs : PREPARED_SHARE_TTL_MS);
+
+                JSONObject result = new JSONObject();
+                result.put("handle", prepared.handle);
+                result.put("expiresAt", System.currentTimeMillis() + prepared.ttlMs);
+                result.put("timings", timer.toJSON());
+                callbackContext.success(result);
+            } catch (Exception e) {
+                Log.e(TAG, "prepareShare error: " + e.getMessage());
+                callbackContext.error("Error preparando share: " + e.getMessage());
+            }
+        });
+    }
 
-                shareCallback = callbackContext;
-                Intent chooser = Intent.createChooser(shareIntent, title);
-                cordova.startActivityForResult(this, chooser, SHARE_REQUEST);
+    /** Launches a prepared chooser; the handle is single use. */
+    private void sharePrepared(String handle, StageTimer timer, CallbackContext callbackContext) {
+        final PreparedShare prepared = takePreparedShare(handle);
+        if (prepared == null) {
+            callbackContext.error("Share preparado no encontrado o expirado: " + handle);
+            return;
+        }
 
+        timer.label("handle", handle);
+        cordova.getActivity().runOnUiThread(() -> {
+            try {
+                timer.start();
+                startChooser(prepared.chooser, callbackContext);
+                timer.stop("intent");
             } catch (Exception e) {
                 Log.e(TAG, "Share error: " + e.getMessage());
                 callbackContext.error("Error al compartir: " + e.getMessage());
@@ -113,6 +414,175 @@ public class SLMShare extends CordovaPlugin {
         });
     }
 
+    /** A chooser built by prepareShare, waiting for share({ handle }). */
+    private static final class PreparedShare {
+        final String handle;
+        final Intent chooser;
+        final long createdAt = System.currentTimeMillis();
+        long ttlMs;
+        Runnable expiry;
+
+        PreparedShare(String handle, Intent chooser) {
+            this.handle = handle;
+            this.chooser = chooser;
+        }
+    }
+
+    private void storePreparedShare(PreparedShare prepared, long ttlMs) {
+        // Past the cap the oldest handle makes room, its files stay until the cache trims them
+        while (preparedShares.size() >= MAX_PREPARED_SHARES) {
+            PreparedShare oldest = null;
+            for (PreparedShare candidate : preparedShares.values()) {
+                if (oldest == null || candidate.createdAt < oldest.createdAt) oldest = candidate;
+            }
+            if (oldest == null) break;
+            takePreparedShare(oldest.handle);
+        }
+
+        prepared.ttlMs = ttlMs;
+        prepared.expiry = () -> {
+            if (preparedShares.remove(prepared.handle, prepared)) {
+                cordova.getThreadPool().execute(shareCache::trim);
+            }
+        };
+        preparedShares.put(prepared.handle, prepared);
+        mainHandler.postDelayed(prepared.expiry, ttlMs);
+    }
+
+    /** Removes and returns the prepared share, exactly one caller wins it. */
+    private PreparedShare takePreparedShare(String handle) {
+        PreparedShare prepared = preparedShares.remove(handle);
+        if (prepared != null && prepared.expiry != null) mainHandler.removeCallbacks(prepared.expiry);
+        return prepared;
+    }
+
+    private void releasePreparedShare(String handle, CallbackContext callbackContext) throws JSONException {
+        JSONObject result = new JSONObject();
+        result.put("released", handle != null && takePreparedShare(handle) != null);
+        callbackContext.success(result);
+    }
+
+    private void clearPreparedShares() {
+        for (String handle : preparedShares.keySet()) takePreparedShare(handle);
+    }
+
+    // ============================================
+    // Chunked transfers
+    // ============================================
+
+    /**
+     * Opens a chunked transfer, so large payloads cross the bridge in bounded pieces instead
+     * of one huge string argument. The reply tells JS the chunk size and how many chunks it
+     * may keep in flight.
+     */
+    /**
+     * Checks for idle transfers every TRANSFER_IDLE_MS while any are open, so one abandoned in
+     * JS does not keep its stream and .part file open until another transfer begins.
+     */
+    private void scheduleTransferSweep() {
+        if (transferSweepScheduled.compareAndSet(false, true)) mainHandler.postDelayed(transferSweep, TRANSFER_IDLE_MS);
+    }
+
+    /** Expires idle transfers on the transfer executor, then checks again while any are open. */
+    private void sweepTransfers() {
+        getTransferExecutor().execute(() -> {
+            transfers.expireIdle(TRANSFER_IDLE_MS);
+            transferSweepScheduled.set(false);
+            if (!transfers.isEmpty()) scheduleTransferSweep();
+        });
+    }
+
+    private void beginTransfer(JSONObject options, CallbackContext callbackContext) {
+        if (options == null) options = new JSONObject();
+        final long size = options.optLong("size", 0);
+        final String mimeType = options.optString("mimeType", null);
+
+        getTransferExecutor().execute(() -> {
+            try {
+                transfers.expireIdle(TRANSFER_IDLE_MS);
+                ChunkedTransfers.Transfer transfer = transfers.begin(size, mimeType);
+                scheduleTransferSweep();
+
+                JSONObject result = new JSONObject();
+                result.put("transferId", transfer.id);
+                result.put("chunkSize", TRANSFER_CHUNK_BYTES);
+                result.put("window", TRANSFER_WINDOW);
+                callbackContext.success(result);
+            } catch (Exception e) {
+                Log.e(TAG, "beginTransfer error: " + e.getMessage());
+                callbackContext.error("Error iniciando transferencia: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Queues one chunk (an ArrayBuffer, base64 on the Android bridge). Chunks are written in
+     * arrival order on a single thread; past TRANSFER_MAX_QUEUED unwritten chunks the call fails
+     * so a sender that ignores the window cannot pile payloads up in memory.
+     */
+    private void appendChunk(String transferId, int seq, String data, CallbackContext callbackContext) {
+        final ChunkedTransfers.Transfer transfer = transfers.get(transferId);
+        if (transfer == null) {
+            callbackContext.error("Transferencia no encontrada: " + transferId);
+            return;
+        }
+        if (transfer.queued.incrementAndGet() > TRANSFER_MAX_QUEUED) {
+            transfer.queued.decrementAndGet();
+            callbackContext.error("Demasiados chunks en vuelo, espera la confirmacion de los anteriores");
+            return;
+        }
+
+        getTransferExecutor().execute(() -> {
+            try {
+                long bytes = transfers.append(transfer, seq, data, BASE64_CHUNK);
+                JSONObject result = new JSONObject();
+                result.put("seq", seq);
+                result.put("bytes", bytes);
+                callbackContext.success(result);
+            } catch (Exception e) {
+                // A lost chunk leaves the file unusable
+                transfers.abort(transfer.id);
+                Log.e(TAG, "appendChunk error: " + e.getMessage());
+                callbackContext.error("Error recibiendo chunk: " + e.getMessage());
+            } finally {
+                transfer.queued.decrementAndGet();
+            }
+        });
+    }
+
+    /** Finishes a transfer; the handle is a file:// reference that share, shareToApp and saveToGallery accept. */
+    private void commitTransfer(String transferId, CallbackContext callbackContext) {
+        final ChunkedTransfers.Transfer transfer = transfers.get(transferId);
+        if (transfer == null) {
+            callbackContext.error("Transferencia no encontrada: " + transferId);
+            return;
+        }
+
+        // Same executor as the chunks, so every queued chunk is written first
+        getTransferExecutor().execute(() -> {
+            try {
+                File file = transfers.commit(transfer);
+                String mimeType = MediaTypes.resolve(MediaTypes.sniff(file), transfer.mimeType);
+
+                JSONObject result = new JSONObject();
+                result.put("handle", Uri.fromFile(file).toString());
+                result.put("bytes", file.length());
+                if (mimeType != null) result.put("mimeType", mimeType);
+                callbackContext.success(result);
+            } catch (IllegalArgumentException e) {
+                callbackContext.error(e.getMessage());
+            } catch (Exception e) {
+                Log.e(TAG, "commit error: " + e.getMessage());
+                callbackContext.error("Error completando transferencia: " + e.getMessage());
+            }
+        });
+    }
+
+    private synchronized ExecutorService getTransferExecutor() {
+        if (transferExecutor == null) transferExecutor = Executors.newSingleThreadExecutor();
+        return transferExecutor;
+    }
+
     // ============================================
     // shareToApp
     // ============================================
@@ -126,182 +596,120 @@ public class SLMShare extends CordovaPlugin {
         final String imageBase64 = options.optString("image", null);
         final String phoneNumber = options.optString("phoneNumber", null);
 
-        final Activity activity = cordova.getActivity();
+        final ShareTargets.Target target = shareTargets.get(app);
+        if (target == null) {
+            callbackContext.error("App no soportada: " + app);
+            return;
+        }
 
-        activity.runOnUiThread(() -> {
-            try {
-                boolean opened = false;
-
-                switch (app) {
-                    case "whatsapp": {
-                        String shareText = text;
-                        if (url != null) shareText += " " + url;
-
-                        if (phoneNumber != null) {
-                            // Direct to number
-                            String waUrl = "https://wa.me/" + phoneNumber.replaceAll("[^0-9]", "") + "?text=" + Uri.encode(shareText);
-                            Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(waUrl));
-                            activity.startActivity(intent);
-                            opened = true;
-                        } else {
-                            Intent intent = new Intent(Intent.ACTION_SEND);
-                            intent.setPackage("com.whatsapp");
-                            intent.setType("text/plain");
-                            intent.putExtra(Intent.EXTRA_TEXT, shareText);
-
-                            if (imageBase64 != null && !imageBase64.isEmpty()) {
-                                Uri imageUri = saveBase64ToCache(imageBase64, activity);
-                                if (imageUri != null) {
-                                    intent.setType("image/*");
-                                    intent.putExtra(Intent.EXTRA_STREAM, imageUri);
-                                    intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                                }
-                            }
-                            activity.startActivity(intent);
-                            opened = true;
-                        }
-                        break;
-                    }
+        final Activity activity = cordova.getActivity();
+        final StageTimer timer = timerFor(callbackContext);
 
-                    case "telegram": {
-                        String shareText = text;
-                        if (url != null) shareText += " " + url;
-
-                        Intent intent = new Intent(Intent.ACTION_SEND);
-                        intent.setPackage("org.telegram.messenger");
-                        intent.setType("text/plain");
-                        intent.putExtra(Intent.EXTRA_TEXT, shareText);
-
-                        if (imageBase64 != null && !imageBase64.isEmpty()) {
-                            Uri imageUri = saveBase64ToCache(imageBase64, activity);
-                            if (imageUri != null) {
-                                intent.setType("image/*");
-                                intent.putExtra(Intent.EXTRA_STREAM, imageUri);
-                                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                            }
-                        }
-                        activity.startActivity(intent);
-                        opened = true;
-                        break;
-                    }
+        // Only targets that attach the image pay for the decode
+        final boolean usesImage = imageBase64 != null && !imageBase64.isEmpty() && target.usesImage(phoneNumber);
 
-                    case "instagram": {
-                        if (imageBase64 != null && !imageBase64.isEmpty()) {
-                            Uri imageUri = saveBase64ToCache(imageBase64, activity);
-                            if (imageUri != null) {
-                                Intent intent = new Intent("com.instagram.share.ADD_TO_STORY");
-                                intent.setPackage("com.instagram.android");
-                                intent.setDataAndType(imageUri, "image/*");
-                                intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-                                activity.startActivity(intent);
-                                opened = true;
-                            }
-                        } else {
-                            Intent intent = activity.getPackageManager().getLaunchIntentForPackage("com.instagram.android");
-                            if (intent != null) {
-                                activity.startActivity(intent);
-                                opened = true;
-                            }
-                        }
-                        break;
-                    }
+        cordova.getThreadPool().execute(() -> {
+            Uri imageUri = null;
+            if (usesImage) {
+                imageUri = target.profile != null
+                        ? stageImageForProfile(imageBase64, target.profile, activity, timer)
+                        : stageImage(imageBase64, activity, timer);
+            }
+            timer.start();
+            final Intent intent = shareTargets.buildIntent(target, activity.getPackageManager(), text, url, imageUri, phoneNumber);
+            timer.stop("resolve");
+            activity.runOnUiThread(() -> launchShareToApp(app, intent, timer, callbackContext));
+        });
+    }
 
-                    case "facebook": {
-                        Intent intent = new Intent(Intent.ACTION_SEND);
-                        intent.setPackage("com.facebook.katana");
-                        intent.setType("text/plain");
-                        if (url != null) intent.putExtra(Intent.EXTRA_TEXT, url);
-                        else intent.putExtra(Intent.EXTRA_TEXT, text);
-                        activity.startActivity(intent);
-                        opened = true;
-                        break;
-                    }
+    private void launchShareToApp(String app, Intent intent, StageTimer timer, CallbackContext callbackContext) {
+        try {
+            if (intent == null) {
+                callbackContext.error(app + " no esta instalada o no se pudo abrir");
+                return;
+            }
 
-                    case "twitter": {
-                        String shareText = text;
-                        if (url != null) shareText += " " + url;
-
-                        Intent intent = new Intent(Intent.ACTION_SEND);
-                        // Try X (new Twitter) first
-                        intent.setPackage("com.twitter.android");
-                        intent.setType("text/plain");
-                        intent.putExtra(Intent.EXTRA_TEXT, shareText);
-                        activity.startActivity(intent);
-                        opened = true;
-                        break;
-                    }
+            timer.start();
+            cordova.getActivity().startActivity(intent);
+            timer.stop("intent");
 
-                    case "email": {
-                        String shareText = text;
-                        if (url != null) shareText += "\n" + url;
+            JSONObject result = new JSONObject();
+            result.put("completed", true);
+            result.put("app", app);
+            result.put("timings", timer.toJSON());
+            callbackContext.success(result);
 
-                        Intent intent = new Intent(Intent.ACTION_SENDTO);
-                        intent.setData(Uri.parse("mailto:"));
-                        intent.putExtra(Intent.EXTRA_TEXT, shareText);
-                        activity.startActivity(intent);
-                        opened = true;
-                        break;
-                    }
+        } catch (android.content.ActivityNotFoundException e) {
+            callbackContext.error(app + " no esta instalada");
+        } catch (Exception e) {
+            Log.e(TAG, "shareToApp error: " + e.getMessage());
+            callbackContext.error("Error al compartir: " + e.getMessage());
+        }
+    }
 
-                    case "sms": {
-                        String shareText = text;
-                        if (url != null) shareText += " " + url;
-
-                        String smsUri = "sms:";
-                        if (phoneNumber != null) smsUri += phoneNumber;
-                        Intent intent = new Intent(Intent.ACTION_SENDTO, Uri.parse(smsUri));
-                        intent.putExtra("sms_body", shareText);
-                        activity.startActivity(intent);
-                        opened = true;
-                        break;
-                    }
+    /** Adds or replaces a shareToApp target from a JS definition, see ShareTargets. */
+    private void registerTarget(JSONObject definition, CallbackContext callbackContext) {
+        if (definition == null) {
+            callbackContext.error("Definicion de target vacia");
+            return;
+        }
+        try {
+            ShareTargets.Target target = shareTargets.register(definition);
+            invalidateAvailableApps();
+            JSONObject result = new JSONObject();
+            result.put("registered", true);
+            result.put("id", target.id);
+            callbackContext.success(result);
+        } catch (JSONException e) {
+            callbackContext.error("Target invalido: " + e.getMessage());
+        }
+    }
 
-                    default:
-                        callbackContext.error("App no soportada: " + app);
-                        return;
-                }
+    // ============================================
+    // getAvailableApps
+    // ============================================
 
-                if (opened) {
-                    JSONObject result = new JSONObject();
-                    result.put("completed", true);
-                    result.put("app", app);
-                    callbackContext.success(result);
-                } else {
-                    callbackContext.error(app + " no esta instalada o no se pudo abrir");
-                }
+    private void getAvailableApps(CallbackContext callbackContext) {
+        // Served from memory until a package is added or removed
+        JSONObject cached = availableApps;
+        if (cached != null) {
+            callbackContext.success(cached);
+            return;
+        }
 
-            } catch (android.content.ActivityNotFoundException e) {
-                callbackContext.error(app + " no esta instalada");
-            } catch (Exception e) {
-                Log.e(TAG, "shareToApp error: " + e.getMessage());
-                callbackContext.error("Error al compartir: " + e.getMessage());
+        cordova.getThreadPool().execute(() -> {
+            try {
+                callbackContext.success(loadAvailableApps());
+            } catch (JSONException e) {
+                callbackContext.error("Error detectando apps: " + e.getMessage());
             }
         });
     }
 
-    // ============================================
-    // getAvailableApps
-    // ============================================
+    /**
+     * Runs the PackageManager lookups once and caches the result, unless invalidated meanwhile.
+     * Holds its own lock, so slow package queries never block staging or teardown.
+     */
+    private JSONObject loadAvailableApps() throws JSONException {
+        synchronized (availableAppsLock) {
+            JSONObject cached = availableApps;
+            if (cached != null) return cached;
 
-    private void getAvailableApps(CallbackContext callbackContext) {
-        Activity activity = cordova.getActivity();
-        PackageManager pm = activity.getPackageManager();
+            int generation = availableAppsGeneration.get();
+            PackageManager pm = cordova.getActivity().getPackageManager();
 
-        try {
-            JSONObject result = new JSONObject();
-            result.put("whatsapp", isAppInstalled(pm, "com.whatsapp"));
-            result.put("telegram", isAppInstalled(pm, "org.telegram.messenger"));
-            result.put("instagram", isAppInstalled(pm, "com.instagram.android"));
-            result.put("facebook", isAppInstalled(pm, "com.facebook.katana"));
-            result.put("twitter", isAppInstalled(pm, "com.twitter.android"));
-            result.put("email", canSendEmail(pm));
-            result.put("sms", canSendSMS(pm));
-            callbackContext.success(result);
-        } catch (JSONException e) {
-            callbackContext.error("Error detectando apps: " + e.getMessage());
+            JSONObject result = shareTargets.availability(pm);
+
+            if (generation == availableAppsGeneration.get()) availableApps = result;
+            return result;
         }
     }
 
+    private void invalidateAvailableApps() {
+        availableAppsGeneration.incrementAndGet();
+        availableApps = null;
+    }
+
     // ============================================
     // shareScreenshot
     // ============================================
@@ -309,10 +717,18 @@ public class SLMShare extends CordovaPlugin {
     private void shareScreenshot(JSONObject options, CallbackContext callbackContext) {
         if (options == null) options = new JSONObject();
 
-        final boolean shouldShare = options.optBoolean("share", false);
-        final boolean returnBase64 = options.optBoolean("returnBase64", true);
-
+        final ScreenshotOptions opts = new ScreenshotOptions(options);
         final Activity activity = cordova.getActivity();
+        final StageTimer timer = timerFor(callbackContext);
+        if (opts.share) {
+            // Registered now, so cancelShare and the timeout also cover the capture
+            try {
+                registerShare(opts.requestId, opts.timeoutMs, timer, callbackContext);
+            } catch (IllegalStateException e) {
+                callbackContext.error("Error capturando pantalla: " + e.getMessage());
+                return;
+            }
+        }
 
         activity.runOnUiThread(() -> {
             try {
@@ -322,44 +738,33 @@ public class SLMShare extends CordovaPlugin {
                     callbackContext.error("No se pudo acceder al WebView");
                     return;
                 }
+                if (webView.getWidth() <= 0 || webView.getHeight() <= 0) {
+                    callbackContext.error("No se pudo capturar la pantalla");
+                    return;
+                }
 
-                Bitmap bitmap = Bitmap.createBitmap(webView.getWidth(), webView.getHeight(), Bitmap.Config.ARGB_8888);
-                Canvas canvas = new Canvas(bitmap);
-                webView.draw(canvas);
-
-                if (shouldShare) {
-                    // Save to cache and share
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-                    String base64 = Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
-
-                    Uri imageUri = saveBase64ToCache(base64, activity);
-                    if (imageUri != null) {
-                        Intent shareIntent = new Intent(Intent.ACTION_SEND);
-                        shareIntent.setType("image/*");
-                        shareIntent.putExtra(Intent.EXTRA_STREAM, imageUri);
-                        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-                        shareCallback = callbackContext;
-                        Intent chooser = Intent.createChooser(shareIntent, "Compartir captura");
-                        cordova.startActivityForResult(this, chooser, SHARE_REQUEST);
-                    } else {
-                        callbackContext.error("Error guardando captura temporal");
-                    }
-                } else {
-                    JSONObject result = new JSONObject();
-                    result.put("completed", true);
+                bitmapPool.onViewSize(webView.getWidth(), webView.getHeight());
+                if (opts.fullPage) {
+                    new FullPageCapture(webView, opts, timer, callbackContext).start();
+                    return;
+                }
 
-                    if (returnBase64) {
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-                        result.put("base64", Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP));
-                    }
+                // Downscale while capturing so the full-size bitmap is never allocated
+                float scale = screenshotScale(webView.getWidth(), webView.getHeight(), opts.scale, opts.maxDimension);
+                BitmapPool.Entry capture = bitmapPool.acquire(
+                        Math.max(1, Math.round(webView.getWidth() * scale)),
+                        Math.max(1, Math.round(webView.getHeight() * scale)), opts.config);
+                timer.bitmap(capture.byteCount());
 
-                    callbackContext.success(result);
+                // The SDK check is repeated here so lint sees the guard of the API 26 call
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && opts.usePixelCopy()) {
+                    capturePixelCopy(webView, capture, scale, opts, timer, callbackContext);
+                    return;
                 }
 
-                bitmap.recycle();
+                drawViewport(webView, capture, scale, timer);
+                // Only the draw needs the UI thread, compression runs in the background
+                cordova.getThreadPool().execute(() -> encodeScreenshot(capture, opts, timer, callbackContext));
 
             } catch (Exception e) {
                 Log.e(TAG, "Screenshot error: " + e.getMessage());
@@ -368,141 +773,1738 @@ public class SLMShare extends CordovaPlugin {
         });
     }
 
-    // ============================================
-    // saveToGallery
-    // ============================================
+    /**
+     * Software capture: re-renders the WebView into the bitmap on the UI thread. Recorded as
+     * capture.draw, apart from capture.pixelcopy, so getMetrics can compare the two paths.
+     */
+    private static void drawViewport(android.view.View webView, BitmapPool.Entry capture, float scale, StageTimer timer) {
+        timer.start();
+        timer.beginSection("capture.draw");
+        try {
+            Canvas canvas = capture.canvas;
+            canvas.save();
+            if (scale != 1f) canvas.scale(scale, scale);
+            webView.draw(canvas);
+            canvas.restore();
+        } finally {
+            timer.endSection();
+        }
+        timer.stop("capture.draw");
+        timer.label("captureMethod", "draw");
+    }
 
-    private void saveToGallery(String base64, CallbackContext callbackContext) {
-        if (base64 == null || base64.isEmpty()) {
-            callbackContext.error("Base64 invalido o vacio");
-            return;
+    /**
+     * Hardware capture (API 26+): copies the WebView area of the window surface, including
+     * video and WebGL layers that a software draw misses, scaled into the bitmap. Falls back
+     * to drawViewport when the copy fails. UI thread.
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    private void capturePixelCopy(android.view.View webView, BitmapPool.Entry capture, float scale,
+                                  ScreenshotOptions opts, StageTimer timer, CallbackContext callbackContext) {
+        int[] location = new int[2];
+        webView.getLocationInWindow(location);
+        Rect source = new Rect(location[0], location[1],
+                location[0] + webView.getWidth(), location[1] + webView.getHeight());
+
+        final long start = System.nanoTime();
+        try {
+            PixelCopy.request(cordova.getActivity().getWindow(), source, capture.bitmap, copyResult -> {
+                if (copyResult == PixelCopy.SUCCESS) {
+                    timer.add("capture.pixelcopy", System.nanoTime() - start);
+                    timer.label("captureMethod", "pixelcopy");
+                } else {
+                    Log.w(TAG, "PixelCopy failed (" + copyResult + "), falling back to draw");
+                    drawViewport(webView, capture, scale, timer);
+                }
+                cordova.getThreadPool().execute(() -> encodeScreenshot(capture, opts, timer, callbackContext));
+            }, mainHandler);
+        } catch (IllegalArgumentException e) {
+            // No surface yet, or the window is gone
+            Log.w(TAG, "PixelCopy unavailable: " + e.getMessage());
+            drawViewport(webView, capture, scale, timer);
+            cordova.getThreadPool().execute(() -> encodeScreenshot(capture, opts, timer, callbackContext));
         }
+    }
 
-        cordova.getThreadPool().execute(() -> {
-            try {
-                byte[] imageBytes = Base64.decode(base64, Base64.DEFAULT);
-                Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
+    private void encodeScreenshot(BitmapPool.Entry capture, ScreenshotOptions opts, StageTimer timer,
+                                  CallbackContext callbackContext) {
+        final Activity activity = cordova.getActivity();
+        final Bitmap bitmap = capture.bitmap;
+        final String mimeType = mimeForFormat(opts.format);
 
-                if (bitmap == null) {
-                    callbackContext.error("No se pudo decodificar la imagen");
+        try {
+            if (opts.share) {
+                // Compress straight into the cache file, without the base64 round trip
+                Uri imageUri;
+                try {
+                    timer.start();
+                    timer.beginSection("compress");
+                    File imageFile;
+                    try {
+                        imageFile = shareCache.store(null, MediaTypes.extensionForMime(mimeType),
+                                out -> bitmap.compress(opts.format, opts.quality, out));
+                    } finally {
+                        timer.endSection();
+                    }
+                    timer.stop("compress");
+                    timer.addBytes(imageFile.length());
+                    imageUri = FileProvider.getUriForFile(activity, getFileProviderAuthority(activity), imageFile);
+                } catch (Exception e) {
+                    Log.e(TAG, "Screenshot cache error: " + e.getMessage());
+                    callbackContext.error("Error guardando captura temporal");
                     return;
                 }
 
-                Activity activity = cordova.getActivity();
-                String filename = "SLM_" + System.currentTimeMillis() + ".png";
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    // Android 10+ use MediaStore
-                    ContentValues values = new ContentValues();
-                    values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
-                    values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
-                    values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/SLM");
-
-                    Uri uri = activity.getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-                    if (uri != null) {
-                        OutputStream os = activity.getContentResolver().openOutputStream(uri);
-                        if (os != null) {
-                            bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
-                            os.close();
-                        }
-                    }
-
-                    JSONObject result = new JSONObject();
-                    result.put("saved", true);
-                    if (uri != null) result.put("path", uri.toString());
-                    callbackContext.success(result);
-                } else {
-                    // Legacy
-                    File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-                    File slmDir = new File(picturesDir, "SLM");
-                    if (!slmDir.exists()) slmDir.mkdirs();
-
-                    File file = new File(slmDir, filename);
-                    FileOutputStream fos = new FileOutputStream(file);
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-                    fos.close();
+                activity.runOnUiThread(() -> {
+                    try {
+                        timer.start();
+                        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                        shareIntent.setType(mimeType);
+                        shareIntent.putExtra(Intent.EXTRA_STREAM, imageUri);
+                        shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 
-                    // Notify gallery
-                    Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                    mediaScanIntent.setData(Uri.fromFile(file));
-                    activity.sendBroadcast(mediaScanIntent);
+                        Intent chooser = Intent.createChooser(shareIntent, "Compartir captura");
+                        startChooser(chooser, callbackContext);
+                        timer.stop("intent");
+                    } catch (Exception e) {
+                        Log.e(TAG, "Screenshot error: " + e.getMessage());
+                        callbackContext.error("Error capturando pantalla: " + e.getMessage());
+                    }
+                });
+            } else {
+                JSONObject result = new JSONObject();
+                result.put("completed", true);
 
-                    JSONObject result = new JSONObject();
-                    result.put("saved", true);
-                    result.put("path", file.getAbsolutePath());
-                    callbackContext.success(result);
+                if (opts.returnBase64) {
+                    timer.start();
+                    timer.beginSection("compress");
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    try {
+                        bitmap.compress(opts.format, opts.quality, baos);
+                    } finally {
+                        timer.endSection();
+                    }
+                    timer.stop("compress");
+                    timer.addBytes(baos.size());
+                    result.put("base64", Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP));
+                    result.put("mimeType", mimeType);
+                    timer.stop("encode");
                 }
 
-                bitmap.recycle();
-
-            } catch (Exception e) {
-                Log.e(TAG, "saveToGallery error: " + e.getMessage());
-                callbackContext.error("Error guardando imagen: " + e.getMessage());
+                result.put("timings", timer.toJSON());
+                callbackContext.success(result);
+            }
+
+        } catch (Exception e) {
+            Log.e(TAG, "Screenshot error: " + e.getMessage());
+            callbackContext.error("Error capturando pantalla: " + e.getMessage());
+        } finally {
+            bitmapPool.release(capture);
+        }
+    }
+
+    /** Parsed shareScreenshot options. */
+    private static final class ScreenshotOptions {
+        final boolean share;
+        final boolean returnBase64;
+        final String requestId;
+        final long timeoutMs;
+        final Bitmap.CompressFormat format;
+        final int quality;
+        final int maxDimension;
+        final float scale;
+        final Bitmap.Config config;
+        final boolean fullPage;
+        final int maxHeight;
+        final String captureMode;
+        final boolean tiles;
+
+        ScreenshotOptions(JSONObject options) {
+            share = options.optBoolean("share", false);
+            returnBase64 = options.optBoolean("returnBase64", true);
+            requestId = options.optString("requestId", null);
+            timeoutMs = options.optLong("timeout", 0);
+
+            Bitmap.CompressFormat requested = parseCompressFormat(options.optString("format", null));
+            format = requested != null ? requested : Bitmap.CompressFormat.PNG;
+            quality = options.optInt("quality", format == Bitmap.CompressFormat.PNG ? 100 : DEFAULT_QUALITY);
+            maxDimension = options.optInt("maxDimension", 0);
+            scale = (float) options.optDouble("scale", 1.0);
+            config = options.optBoolean("rgb565", false) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+            fullPage = options.optBoolean("fullPage", false);
+            maxHeight = options.optInt("maxHeight", FULL_PAGE_MAX_HEIGHT);
+            captureMode = options.optString("captureMode", "auto");
+            tiles = options.optBoolean("tiles", false);
+        }
+
+        /** PixelCopy unless the caller asked for a software draw or the device predates API 26. */
+        boolean usePixelCopy() {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && !"draw".equals(captureMode);
+        }
+    }
+
+    /**
+     * Captures the whole scrollable page one viewport-sized tile at a time: scroll, let the
+     * WebView raster, draw the tile, stream its rows into a single PNG in the cache, then move
+     * on. Only one tile bitmap is alive at any time, so memory does not grow with the page
+     * height. With the tiles option each tile is compressed to its own file instead.
+     * Progress is reported through keepCallback after every tile.
+     */
+    private final class FullPageCapture {
+        private final android.view.View view;
+        private final ScreenshotOptions opts;
+        private final StageTimer timer;
+        private final CallbackContext callbackContext;
+
+        private final int originalScrollX;
+        private final int originalScrollY;
+        private final int viewportHeight;
+        private final int totalHeight;
+        private final int tileCount;
+        private final boolean truncated;
+        private final float scale;
+        private final int outputWidth;
+        private final int outputHeight;
+
+        private final JSONArray tiles = new JSONArray();
+        private final ArrayList<Uri> tileUris = new ArrayList<>();
+        private int nextY;
+        private int nextIndex;
+
+        // Single-image output, touched only by writeTile on the thread pool
+        private File pngFile;
+        private MessageDigest pngDigest;
+        private OutputStream pngOut;
+        private PngStreamWriter png;
+        private int[] pixels;
+
+        FullPageCapture(android.view.View view, ScreenshotOptions opts, StageTimer timer, CallbackContext callbackContext) {
+            this.view = view;
+            this.opts = opts;
+            this.timer = timer;
+            this.callbackContext = callbackContext;
+
+            originalScrollX = view.getScrollX();
+            originalScrollY = view.getScrollY();
+            viewportHeight = view.getHeight();
+
+            int contentHeight = viewportHeight;
+            if (view instanceof WebView) {
+                // Content height is in CSS px; Cordova pages use a device-width viewport at
+                // scale 1, so one CSS px is density screen px (getScale() is deprecated)
+                float density = view.getResources().getDisplayMetrics().density;
+                contentHeight = Math.max(viewportHeight, Math.round(((WebView) view).getContentHeight() * density));
+            }
+            int limit = opts.maxHeight > 0 ? opts.maxHeight : FULL_PAGE_MAX_HEIGHT;
+            totalHeight = Math.min(contentHeight, limit);
+            truncated = contentHeight > totalHeight;
+            tileCount = (totalHeight + viewportHeight - 1) / viewportHeight;
+
+            // maxDimension applies to the width, the height is bounded by maxHeight
+            scale = screenshotScale(view.getWidth(), view.getWidth(), opts.scale, opts.maxDimension);
+            outputWidth = Math.max(1, Math.round(view.getWidth() * scale));
+            outputHeight = Math.max(1, Math.round(totalHeight * scale));
+        }
+
+        /** UI thread. */
+        void start() {
+            captureNext();
+        }
+
+        private void captureNext() {
+            if (nextY >= totalHeight) {
+                finish();
+                return;
+            }
+            view.scrollTo(originalScrollX, nextY);
+            mainHandler.postDelayed(this::drawTile, FULL_PAGE_SETTLE_MS);
+        }
+
+        private void drawTile() {
+            try {
+                final int y = nextY;
+                final int height = Math.min(viewportHeight, totalHeight - y);
+                final int index = nextIndex++;
+                nextY += height;
+                final boolean last = nextY >= totalHeight;
+
+                // Output rows of this tile, rounded so the tiles add up to outputHeight exactly
+                final int firstRow = Math.round(y * scale);
+                final int rows = (last ? outputHeight : Math.round(nextY * scale)) - firstRow;
+                if (rows <= 0) {
+                    // Nothing left at this scale, but a last tile still has to complete the PNG
+                    if (!last || opts.tiles || png == null) {
+                        captureNext();
+                    } else {
+                        cordova.getThreadPool().execute(() -> {
+                            try {
+                                finishPng();
+                            } catch (Exception e) {
+                                cordova.getActivity().runOnUiThread(() -> fail(e));
+                                return;
+                            }
+                            cordova.getActivity().runOnUiThread(this::captureNext);
+                        });
+                    }
+                    return;
+                }
+
+                timer.start();
+                BitmapPool.Entry tile = bitmapPool.acquire(outputWidth, rows, opts.config);
+                timer.bitmap(tile.byteCount());
+                Canvas canvas = tile.canvas;
+                canvas.save();
+                // Sub-pixel remainder of the rounding, so consecutive tiles line up
+                canvas.translate(0, y * scale - firstRow);
+                if (scale != 1f) canvas.scale(scale, scale);
+                // Content coordinates, as the parent would draw the scrolled view
+                canvas.translate(-view.getScrollX(), -y);
+                view.draw(canvas);
+                canvas.restore();
+                timer.stop("capture.tile");
+
+                cordova.getThreadPool().execute(() -> writeTile(tile, index, y, height, last));
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        /** Background thread, hands control back to the UI thread for the next tile. */
+        private void writeTile(BitmapPool.Entry tile, int index, int y, int height, boolean last) {
+            try {
+                timer.start();
+                if (opts.tiles) {
+                    writeTileFile(tile, y, height);
+                } else {
+                    appendToPng(tile.bitmap);
+                    if (last) finishPng();
+                }
+                timer.stop("compress");
+
+                JSONObject progress = new JSONObject();
+                progress.put("progress", (double) (index + 1) / tileCount);
+                progress.put("tile", index + 1);
+                progress.put("tiles", tileCount);
+                PluginResult update = new PluginResult(PluginResult.Status.OK, progress);
+                update.setKeepCallback(true);
+                callbackContext.sendPluginResult(update);
+            } catch (Exception e) {
+                cordova.getActivity().runOnUiThread(() -> fail(e));
+                return;
+            } finally {
+                bitmapPool.release(tile);
+            }
+            cordova.getActivity().runOnUiThread(this::captureNext);
+        }
+
+        private void writeTileFile(BitmapPool.Entry tile, int y, int height) throws IOException, JSONException {
+            Activity activity = cordova.getActivity();
+            File tileFile = shareCache.store(null, MediaTypes.extensionForMime(mimeForFormat(opts.format)),
+                    out -> tile.bitmap.compress(opts.format, opts.quality, out));
+            timer.addBytes(tileFile.length());
+            tileUris.add(FileProvider.getUriForFile(activity, getFileProviderAuthority(activity), tileFile));
+
+            JSONObject info = new JSONObject();
+            info.put("uri", Uri.fromFile(tileFile).toString());
+            info.put("y", y);
+            info.put("height", height);
+            tiles.put(info);
+        }
+
+        /** Streams the tile's rows into the PNG, a few rows of pixels at a time. */
+        private void appendToPng(Bitmap bitmap) throws IOException {
+            if (png == null) {
+                pngFile = shareCache.newFile("fullpage_", ".part");
+                pngDigest = ShareCache.newDigest();
+                pngOut = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(pngFile)), pngDigest);
+                png = new PngStreamWriter(pngOut, outputWidth, outputHeight, Deflater.DEFAULT_COMPRESSION);
+                pixels = new int[outputWidth * FULL_PAGE_PIXEL_ROWS];
+            }
+            int rows = bitmap.getHeight();
+            for (int row = 0; row < rows; row += FULL_PAGE_PIXEL_ROWS) {
+                int count = Math.min(FULL_PAGE_PIXEL_ROWS, rows - row);
+                bitmap.getPixels(pixels, 0, outputWidth, 0, row, outputWidth, count);
+                png.writeRows(pixels, 0, outputWidth, count);
+            }
+        }
+
+        /** Completes the PNG and moves it into the cache under its content hash. */
+        private void finishPng() throws IOException {
+            png.finish();
+            pngOut.close();
+            File file = shareCache.adopt(pngFile, ShareCache.toHex(pngDigest.digest()), ".png");
+            pngOut = null;
+            timer.addBytes(file.length());
+
+            Activity activity = cordova.getActivity();
+            tileUris.add(FileProvider.getUriForFile(activity, getFileProviderAuthority(activity), file));
+            pngFile = file;
+        }
+
+        private String outputMimeType() {
+            return opts.tiles ? mimeForFormat(opts.format) : "image/png";
+        }
+
+        private void finish() {
+            view.scrollTo(originalScrollX, originalScrollY);
+            try {
+                if (tileUris.isEmpty()) throw new IOException("No se capturo ningun tile");
+                if (opts.share) {
+                    timer.start();
+                    Intent shareIntent = new Intent(tileUris.size() > 1 ? Intent.ACTION_SEND_MULTIPLE : Intent.ACTION_SEND);
+                    shareIntent.setType(outputMimeType());
+                    if (tileUris.size() > 1) {
+                        shareIntent.putParcelableArrayListExtra(Intent.EXTRA_STREAM, tileUris);
+                    } else {
+                        shareIntent.putExtra(Intent.EXTRA_STREAM, tileUris.get(0));
+                    }
+                    shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+                    Intent chooser = Intent.createChooser(shareIntent, "Compartir captura");
+                    startChooser(chooser, callbackContext);
+                    timer.stop("intent");
+                    return;
+                }
+
+                JSONObject result = new JSONObject();
+                result.put("completed", true);
+                if (opts.tiles) {
+                    result.put("tiles", tiles);
+                } else {
+                    result.put("uri", Uri.fromFile(pngFile).toString());
+                }
+                result.put("width", outputWidth);
+                result.put("height", outputHeight);
+                result.put("truncated", truncated);
+                result.put("mimeType", outputMimeType());
+                result.put("timings", timer.toJSON());
+                callbackContext.success(result);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void fail(Exception e) {
+            view.scrollTo(originalScrollX, originalScrollY);
+            // The writer is idle here, the failing step already returned
+            if (png != null) png.abort();
+            if (pngOut != null) {
+                try {
+                    pngOut.close();
+                } catch (IOException ignored) {
+                    // Deleted below either way
+                }
+                pngFile.delete();
+            }
+            Log.e(TAG, "Full page screenshot error: " + e.getMessage());
+            callbackContext.error("Error capturando pantalla: " + e.getMessage());
+        }
+    }
+
+    /** Scale applied at draw time: the requested factor, capped so the longest side fits maxDimension. */
+    private static float screenshotScale(int width, int height, float scale, int maxDimension) {
+        if (scale <= 0f || scale > 1f) scale = 1f;
+        if (maxDimension > 0) {
+            scale = Math.min(scale, (float) maxDimension / Math.max(width, height));
+        }
+        return scale;
+    }
+
+    // ============================================
+    // saveToGallery
+    // ============================================
+
+    private void saveToGallery(String image, JSONObject options, CallbackContext callbackContext) {
+        if (image == null || image.isEmpty()) {
+            callbackContext.error("Base64 invalido o vacio");
+            return;
+        }
+        final GalleryOptions opts = new GalleryOptions(options != null ? options : new JSONObject());
+        final StageTimer timer = timerFor(callbackContext);
+
+        cordova.getThreadPool().execute(() -> {
+            try {
+                GalleryItem item = writeToGallery(image, opts, true, timer);
+                callbackContext.success(item.toJSON());
+            } catch (IllegalArgumentException e) {
+                callbackContext.error(e.getMessage());
+            } catch (Exception e) {
+                Log.e(TAG, "saveToGallery error: " + e.getMessage());
+                callbackContext.error("Error guardando imagen: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Saves many images with bounded concurrency on the gallery executor, so neither the
+     * Cordova thread pool nor share staging waits behind a large batch. Every item reports
+     * through keepCallback as it finishes and a failing item does not stop the rest. On
+     * Android 10+ items are inserted as IS_PENDING and published with one applyBatch per
+     * GALLERY_PUBLISH_GROUP items, the last partial group when the batch ends.
+     */
+    private void saveManyToGallery(JSONArray images, JSONObject options, CallbackContext callbackContext) {
+        if (images == null || images.length() == 0) {
+            callbackContext.error("No hay imagenes para guardar");
+            return;
+        }
+        final GalleryOptions opts = new GalleryOptions(options != null ? options : new JSONObject());
+        final int total = images.length();
+        final GalleryItem[] items = new GalleryItem[total];
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final StageTimer timer = timerFor(callbackContext);
+        final List<GalleryItem> unpublished = new ArrayList<>();
+
+        ExecutorService executor = getGalleryExecutor();
+        for (int i = 0; i < total; i++) {
+            final int index = i;
+            final String image = images.optString(i, "");
+            executor.execute(() -> {
+                String error = null;
+                StageTimer itemTimer = timer.child();
+                try {
+                    if (image.isEmpty()) throw new IllegalArgumentException("Base64 invalido o vacio");
+                    items[index] = writeToGallery(image, opts, false, itemTimer);
+                } catch (Exception e) {
+                    Log.e(TAG, "saveManyToGallery item " + index + " error: " + e.getMessage());
+                    failed.incrementAndGet();
+                    error = e.getMessage();
+                }
+                timer.addAll(itemTimer);
+
+                // Published before counting the item done, so the last one only has the rest left
+                if (items[index] != null) {
+                    List<GalleryItem> group = null;
+                    synchronized (unpublished) {
+                        unpublished.add(items[index]);
+                        if (unpublished.size() >= GALLERY_PUBLISH_GROUP) {
+                            group = new ArrayList<>(unpublished);
+                            unpublished.clear();
+                        }
+                    }
+                    if (group != null) publishGalleryGroup(group, timer);
+                }
+
+                int finished = done.incrementAndGet();
+                try {
+                    JSONObject progress = new JSONObject();
+                    progress.put("index", index);
+                    progress.put("saved", items[index] != null);
+                    if (items[index] != null) progress.put("mimeType", items[index].mimeType);
+                    if (error != null) progress.put("error", error);
+                    progress.put("done", finished);
+                    progress.put("total", total);
+
+                    PluginResult update = new PluginResult(PluginResult.Status.OK, progress);
+                    update.setKeepCallback(true);
+                    callbackContext.sendPluginResult(update);
+                } catch (JSONException e) {
+                    Log.e(TAG, "saveManyToGallery progress error: " + e.getMessage());
+                }
+
+                // Last item to finish publishes the batch and resolves the call
+                if (finished == total) {
+                    finishGalleryBatch(items, unpublished, failed.get(), timer, callbackContext);
+                }
+            });
+        }
+    }
+
+    private void finishGalleryBatch(GalleryItem[] items, List<GalleryItem> unpublished, int failed, StageTimer timer,
+                                    CallbackContext callbackContext) {
+        try {
+            List<GalleryItem> rest;
+            synchronized (unpublished) {
+                rest = new ArrayList<>(unpublished);
+                unpublished.clear();
+            }
+            publishGalleryGroup(rest, timer);
+
+            JSONArray saved = new JSONArray();
+            for (GalleryItem item : items) saved.put(item != null ? item.toJSON() : JSONObject.NULL);
+
+            JSONObject result = new JSONObject();
+            result.put("completed", true);
+            result.put("saved", items.length - failed);
+            result.put("failed", failed);
+            result.put("items", saved);
+            callbackContext.success(result);
+        } catch (Exception e) {
+            Log.e(TAG, "saveManyToGallery error: " + e.getMessage());
+            callbackContext.error("Error guardando imagenes: " + e.getMessage());
+        }
+    }
+
+    private void publishGalleryGroup(List<GalleryItem> group, StageTimer timer) {
+        StageTimer groupTimer = timer.child();
+        groupTimer.start();
+        publishGalleryItems(group);
+        groupTimer.stop("publish");
+        timer.addAll(groupTimer);
+    }
+
+    /** Clears IS_PENDING on every written item in one transaction, item by item if that fails. */
+    private void publishGalleryItems(List<GalleryItem> items) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || items.isEmpty()) return;
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (GalleryItem item : items) {
+            if (item == null || item.uri == null) continue;
+            operations.add(ContentProviderOperation.newUpdate(item.uri)
+                    .withValue(MediaStore.MediaColumns.IS_PENDING, 0)
+                    .build());
+        }
+        if (operations.isEmpty()) return;
+
+        ContentResolver resolver = cordova.getActivity().getContentResolver();
+        try {
+            resolver.applyBatch(MediaStore.AUTHORITY, operations);
+        } catch (Exception e) {
+            Log.w(TAG, "applyBatch failed, publishing one by one: " + e.getMessage());
+            for (GalleryItem item : items) {
+                if (item != null && item.uri != null) publishGalleryItem(resolver, item.uri);
+            }
+        }
+    }
+
+    private static void publishGalleryItem(ContentResolver resolver, Uri uri) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.IS_PENDING, 0);
+        resolver.update(uri, values, null, null);
+    }
+
+    /** Parsed saveToGallery options. */
+    private static final class GalleryOptions {
+        final Bitmap.CompressFormat format;
+        final int quality;
+        final int maxDimension;
+
+        GalleryOptions(JSONObject options) {
+            format = parseCompressFormat(options.optString("format", null));
+            quality = options.optInt("quality", DEFAULT_QUALITY);
+            maxDimension = options.optInt("maxDimension", 0);
+        }
+    }
+
+    /** One image written to the gallery. */
+    private static final class GalleryItem {
+        Uri uri;
+        String path;
+        String mimeType;
+        boolean converted;
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("saved", true);
+            if (path != null) json.put("path", path);
+            json.put("mimeType", mimeType);
+            json.put("converted", converted);
+            return json;
+        }
+    }
+
+    /**
+     * Writes one image (base64 or reference) to the gallery. On Android 10+ the entry is inserted
+     * as IS_PENDING and only published here when publish is true, otherwise the caller publishes.
+     * Throws IllegalArgumentException when the input is not a decodable image.
+     */
+    private GalleryItem writeToGallery(String image, GalleryOptions opts, boolean publish, StageTimer timer)
+            throws IOException {
+        Activity activity = cordova.getActivity();
+        File staging = null;
+        try {
+            // Local files are read in place, anything else is streamed to disk first
+            File source = isReference(image) ? resolveLocalFile(Uri.parse(image)) : null;
+            if (source == null) {
+                staging = shareCache.newFile("gallery_", ".tmp");
+                writeImageTo(image, staging, activity, timer);
+                source = staging;
+            }
+
+            // Bounds-only pass validates the image without allocating pixels
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(source.getAbsolutePath(), bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                throw new IllegalArgumentException("No se pudo decodificar la imagen");
+            }
+
+            String sourceMime = MediaTypes.sniffImage(source);
+            if (sourceMime == null) sourceMime = bounds.outMimeType != null ? bounds.outMimeType : "image/png";
+
+            // Decode only when the caller asks for another format or a smaller size
+            boolean resize = opts.maxDimension > 0 && Math.max(bounds.outWidth, bounds.outHeight) > opts.maxDimension;
+            Bitmap.CompressFormat outputFormat = opts.format != null ? opts.format : compressFormatForMime(sourceMime);
+            boolean convert = resize || (opts.format != null && !mimeForFormat(opts.format).equals(sourceMime));
+            Bitmap.CompressFormat writeFormat = convert ? outputFormat : null;
+
+            GalleryItem item = new GalleryItem();
+            item.mimeType = convert ? mimeForFormat(outputFormat) : sourceMime;
+            item.converted = convert;
+            String filename = "SLM_" + System.currentTimeMillis() + "_" + gallerySequence.incrementAndGet()
+                    + MediaTypes.extensionForMime(item.mimeType);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                // Android 10+ use MediaStore, hidden from other apps until published
+                ContentResolver resolver = activity.getContentResolver();
+                ContentValues values = new ContentValues();
+                values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
+                values.put(MediaStore.Images.Media.MIME_TYPE, item.mimeType);
+                values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/SLM");
+                values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+
+                Uri uri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+                if (uri == null) throw new IOException("MediaStore no creo la entrada");
+                try {
+                    OutputStream os = resolver.openOutputStream(uri);
+                    if (os == null) throw new IOException("No se pudo abrir " + uri);
+                    try {
+                        writeGalleryImage(source, os, writeFormat, opts.quality, opts.maxDimension, bounds, timer);
+                    } finally {
+                        os.close();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    resolver.delete(uri, null, null);
+                    throw e;
+                }
+                if (publish) {
+                    timer.start();
+                    publishGalleryItem(resolver, uri);
+                    timer.stop("publish");
+                }
+
+                item.uri = uri;
+                item.path = uri.toString();
+            } else {
+                // Legacy
+                File picturesDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+                File slmDir = new File(picturesDir, "SLM");
+                if (!slmDir.exists()) slmDir.mkdirs();
+
+                File file = new File(slmDir, filename);
+                FileOutputStream fos = new FileOutputStream(file);
+                try {
+                    writeGalleryImage(source, fos, writeFormat, opts.quality, opts.maxDimension, bounds, timer);
+                } finally {
+                    fos.close();
+                }
+
+                // Notify gallery
+                Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
+                mediaScanIntent.setData(Uri.fromFile(file));
+                activity.sendBroadcast(mediaScanIntent);
+
+                item.path = file.getAbsolutePath();
+            }
+            return item;
+        } finally {
+            if (staging != null) staging.delete();
+        }
+    }
+
+    /**
+     * Writes the source image to the gallery stream. Without a format the original bytes are
+     * copied as-is, otherwise the image is decoded (sampled down to maxDimension) and re-encoded.
+     */
+    private static void writeGalleryImage(File source, OutputStream out, Bitmap.CompressFormat format, int quality,
+                                          int maxDimension, BitmapFactory.Options bounds, StageTimer timer)
+            throws IOException {
+        timer.start();
+        timer.beginSection("save");
+        try {
+            writeGalleryBytes(source, out, format, quality, maxDimension, bounds, timer);
+        } finally {
+            timer.endSection();
+        }
+        timer.stop("save");
+    }
+
+    private static void writeGalleryBytes(File source, OutputStream out, Bitmap.CompressFormat format, int quality,
+                                          int maxDimension, BitmapFactory.Options bounds, StageTimer timer)
+            throws IOException {
+        if (format == null) {
+            timer.addBytes(source.length());
+            FileInputStream in = new FileInputStream(source);
+            try {
+                if (out instanceof FileOutputStream) {
+                    transferFully(in.getChannel(), ((FileOutputStream) out).getChannel(), null);
+                } else {
+                    byte[] buffer = new byte[BASE64_CHUNK];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            return;
+        }
+
+        Bitmap bitmap = decodeSampled(source, maxDimension, bounds);
+        if (bitmap == null) throw new IOException("No se pudo decodificar la imagen");
+        timer.bitmap(bitmap.getAllocationByteCount());
+        try {
+            bitmap.compress(format, quality, out);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
     // ============================================
     // Activity Result
     // ============================================
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent intent) {
-        if (requestCode == SHARE_REQUEST && shareCallback != null) {
+        PendingShare pending = completeShare(requestCode);
+        if (pending == null) return;
+
+        try {
+            JSONObject result = new JSONObject();
+            result.put("completed", resultCode == Activity.RESULT_OK);
+            if (pending.requestId != null) result.put("requestId", pending.requestId);
+            result.put("timings", pending.timer.toJSON());
+            pending.callbackContext.success(result);
+        } catch (JSONException e) {
+            pending.callbackContext.error("Error procesando resultado");
+        }
+
+        // The receiving app is done with the file, a good moment to clean up
+        cordova.getThreadPool().execute(shareCache::trim);
+    }
+
+    @Override
+    public Bundle onSaveInstanceState() {
+        // Only the last chooser can still be on screen, Cordova cancels the earlier ones
+        PendingShare last = lastLaunchedShare;
+        if (last == null || !pendingShares.containsKey(last.requestCode)) return null;
+
+        Bundle state = new Bundle();
+        state.putInt("requestCode", last.requestCode);
+        state.putString("requestId", last.requestId);
+        return state;
+    }
+
+    @Override
+    public void onRestoreStateForActivityResult(Bundle state, CallbackContext callbackContext) {
+        int requestCode = state.getInt("requestCode", -1);
+        if (requestCode < 0) return;
+        PendingShare pending = new PendingShare(requestCode, state.getString("requestId"), callbackContext, new StageTimer());
+        pending.launched = true;
+        pendingShares.put(requestCode, pending);
+    }
+
+    // ============================================
+    // Share requests
+    // ============================================
+
+    /** A share from dispatch until its chooser reports to onActivityResult. */
+    private static final class PendingShare {
+        final int requestCode;
+        final String requestId;
+        final CallbackContext callbackContext;
+        final StageTimer timer;
+        Runnable timeout;
+        // Set under the PendingShare's monitor once the chooser is launched
+        boolean launched;
+
+        PendingShare(int requestCode, String requestId, CallbackContext callbackContext, StageTimer timer) {
+            this.requestCode = requestCode;
+            this.requestId = requestId;
+            this.callbackContext = callbackContext;
+            this.timer = timer;
+        }
+    }
+
+    /**
+     * Registers a share under a fresh request code when it is dispatched, before any staging,
+     * so cancelShare finds it and its timeout counts from the call. startChooser opens it later.
+     */
+    private void registerShare(String requestId, long timeoutMs, StageTimer timer, CallbackContext callbackContext) {
+        pruneFailedShares();
+        int requestCode = nextRequestCode();
+        PendingShare pending = new PendingShare(requestCode, requestId, callbackContext, timer);
+        pendingShares.put(requestCode, pending);
+
+        if (timeoutMs > 0) {
+            pending.timeout = () -> {
+                if (!pendingShares.remove(requestCode, pending)) return;
+                boolean launched;
+                synchronized (pending) {
+                    launched = pending.launched;
+                }
+                if (launched) dismissChooser(requestCode);
+                if (!callbackContext.isFinished()) callbackContext.error("Tiempo de espera agotado al compartir");
+            };
+            mainHandler.postDelayed(pending.timeout, timeoutMs);
+        }
+    }
+
+    /**
+     * Opens the chooser of the share registered for the callback, unless it was cancelled or
+     * timed out while staging; its callback has been answered then. Runs on the UI thread.
+     */
+    private void startChooser(Intent chooser, CallbackContext callbackContext) {
+        PendingShare pending = null;
+        for (PendingShare candidate : pendingShares.values()) {
+            if (candidate.callbackContext == callbackContext) {
+                pending = candidate;
+                break;
+            }
+        }
+        if (pending == null) return;
+        synchronized (pending) {
+            if (pendingShares.get(pending.requestCode) != pending) return;
+            pending.launched = true;
+        }
+
+        lastLaunchedShare = pending;
+        pending.timer.beginSection("intent");
+        try {
+            cordova.startActivityForResult(this, chooser, pending.requestCode);
+        } catch (RuntimeException e) {
+            completeShare(pending.requestCode);
+            throw e;
+        } finally {
+            pending.timer.endSection();
+        }
+    }
+
+    /** Drops shares whose staging failed: never launched, their callback already answered. */
+    private void pruneFailedShares() {
+        for (PendingShare pending : pendingShares.values()) {
+            boolean launched;
+            synchronized (pending) {
+                launched = pending.launched;
+            }
+            if (!launched && pending.callbackContext.isFinished()) completeShare(pending.requestCode);
+        }
+    }
+
+    /** Request codes cycle through SHARE_REQUEST..SHARE_REQUEST+255, skipping ones still in flight. */
+    private int nextRequestCode() {
+        for (int attempt = 0; attempt <= MAX_PENDING_SHARES; attempt++) {
+            int requestCode = SHARE_REQUEST + (requestSequence.getAndIncrement() & MAX_PENDING_SHARES);
+            if (!pendingShares.containsKey(requestCode)) return requestCode;
+        }
+        throw new IllegalStateException("Demasiados shares en curso");
+    }
+
+    /** Removes and returns the pending share, exactly one caller wins it. */
+    private PendingShare completeShare(int requestCode) {
+        PendingShare pending = pendingShares.remove(requestCode);
+        if (pending != null && pending.timeout != null) mainHandler.removeCallbacks(pending.timeout);
+        return pending;
+    }
+
+    /**
+     * Cancels the shares with this requestId: a chooser on screen is dismissed, one still
+     * staging never opens. Either way its callback resolves as cancelled.
+     */
+    private void cancelShare(String requestId, CallbackContext callbackContext) throws JSONException {
+        pruneFailedShares();
+        boolean cancelled = false;
+        for (PendingShare pending : pendingShares.values()) {
+            if (requestId == null || !requestId.equals(pending.requestId)) continue;
+            if (completeShare(pending.requestCode) == null) continue;
+            boolean launched;
+            synchronized (pending) {
+                launched = pending.launched;
+            }
+            if (launched) dismissChooser(pending.requestCode);
+
+            JSONObject result = new JSONObject();
+            result.put("completed", false);
+            result.put("cancelled", true);
+            result.put("requestId", requestId);
+            pending.callbackContext.success(result);
+            cancelled = true;
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("cancelled", cancelled);
+        callbackContext.success(result);
+    }
+
+    /** Closes the chooser, or the app picked from it, launched under the request code. */
+    private void dismissChooser(int requestCode) {
+        Activity activity = cordova.getActivity();
+        activity.runOnUiThread(() -> activity.finishActivity(requestCode));
+    }
+
+    /** Drops every pending share, their callbacks belong to a page that is gone. */
+    private void clearPendingShares() {
+        for (Integer requestCode : pendingShares.keySet()) completeShare(requestCode);
+        lastLaunchedShare = null;
+    }
+
+    // ============================================
+    // Lifecycle
+    // ============================================
+
+    @Override
+    public void onReset() {
+        clearPendingShares();
+        clearPreparedShares();
+        transfers.abortAll();
+    }
+
+    private void cancelTransferSweep() {
+        mainHandler.removeCallbacks(transferSweep);
+        transferSweepScheduled.set(false);
+    }
+
+    @Override
+    public void onDestroy() {
+        clearPendingShares();
+        clearPreparedShares();
+        if (packageReceiver != null) {
             try {
-                JSONObject result = new JSONObject();
-                result.put("completed", resultCode == Activity.RESULT_OK);
-                shareCallback.success(result);
-            } catch (JSONException e) {
-                shareCallback.error("Error procesando resultado");
+                cordova.getActivity().getApplicationContext().unregisterReceiver(packageReceiver);
+            } catch (IllegalArgumentException e) {
+                // Already unregistered
+            }
+            packageReceiver = null;
+        }
+        synchronized (this) {
+            if (stagingExecutor != null) {
+                stagingExecutor.shutdownNow();
+                stagingExecutor = null;
+            }
+            if (transferExecutor != null) {
+                transferExecutor.shutdownNow();
+                transferExecutor = null;
             }
-            shareCallback = null;
+            if (galleryExecutor != null) {
+                galleryExecutor.shutdownNow();
+                galleryExecutor = null;
+            }
+        }
+        cancelTransferSweep();
+        transfers.abortAll();
+        bitmapPool.clear();
+    }
+
+    // ============================================
+    // Metrics
+    // ============================================
+
+    /**
+     * Callback handed to every action. It owns the call's StageTimer and records the call in
+     * the metrics when the final (non keepCallback) result goes out, whichever thread sends it.
+     */
+    private final class MeteredCallback extends CallbackContext {
+        private final String action;
+        private final long startedAt = System.nanoTime();
+        private final StageTimer timer = new StageTimer(metrics);
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private final int traceCookie;
+        private volatile long dispatchNanos;
+
+        MeteredCallback(String action, CallbackContext callbackContext) {
+            super(callbackContext.getCallbackId(), webView);
+            this.action = action;
+            this.traceCookie = metrics.beginAsync(action);
+        }
+
+        /** Called once execute returns: the synchronous part, argument reads and hand-off, is the dispatch stage. */
+        void dispatched(boolean handled) {
+            dispatchNanos = System.nanoTime() - startedAt;
+            if (!handled && recorded.compareAndSet(false, true)) metrics.endAsync(action, traceCookie);
         }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            super.sendPluginResult(pluginResult);
+            if (pluginResult.getKeepCallback() || !recorded.compareAndSet(false, true)) return;
+
+            Map<String, Long> stages = timer.stages();
+            long dispatch = dispatchNanos;
+            if (dispatch > 0) stages.put("dispatch", dispatch);
+            boolean ok = pluginResult.getStatus() == PluginResult.Status.OK.ordinal();
+            metrics.record(action, ok, System.nanoTime() - startedAt, stages, timer.bytes(), timer.peakBitmapBytes());
+            metrics.endAsync(action, traceCookie);
+        }
+    }
+
+    /** The timer of a metered call, or a standalone one for callbacks restored from state. */
+    private static StageTimer timerFor(CallbackContext callbackContext) {
+        if (callbackContext instanceof MeteredCallback) return ((MeteredCallback) callbackContext).timer;
+        return new StageTimer();
     }
 
     // ============================================
     // Helpers
     // ============================================
 
-    private Uri saveBase64ToCache(String base64, Activity activity) {
+    private Uri saveBase64ToCache(String base64, String mimeType, Activity activity, StageTimer timer) {
         try {
-            byte[] imageBytes = Base64.decode(base64, Base64.DEFAULT);
-            File cacheDir = new File(activity.getCacheDir(), "slm_share");
-            if (!cacheDir.exists()) cacheDir.mkdirs();
+            timer.start();
+            String key = ShareCache.hashString(base64);
+            timer.stop("hash");
+            File imageFile = storeBase64(base64, mimeType, key, timer);
+            return FileProvider.getUriForFile(activity, getFileProviderAuthority(activity), imageFile);
+        } catch (Exception e) {
+            Log.e(TAG, "saveBase64ToCache error: " + e.getMessage());
+            return null;
+        }
+    }
 
-            File imageFile = new File(cacheDir, "share_" + System.currentTimeMillis() + ".png");
-            FileOutputStream fos = new FileOutputStream(imageFile);
-            fos.write(imageBytes);
-            fos.close();
+    /**
+     * Keyed by the hash of the text, a repeated payload skips the decode and the write. The
+     * extension, and with it the type the FileProvider reports, comes from the content and
+     * the declared mimeType, if any.
+     */
+    private File storeBase64(String base64, String mimeType, String key, StageTimer timer) throws IOException {
+        return shareCache.store(key, MediaTypes.sniffBase64Extension(base64, mimeType),
+                out -> decodeBase64ToStream(base64, out, timer));
+    }
+
+    /**
+     * Stages an image for a target with an output profile. Images already inside the profile
+     * are staged as they are; others are decoded sampled down to the profile and re-encoded,
+     * within the byte budget when one is set. Results are cached under the source key plus
+     * the profile, so sharing the same image to the same target again reuses the file.
+     */
+    private Uri stageImageForProfile(String image, ImageProfile profile, Activity activity, StageTimer timer) {
+        try {
+            String authority = getFileProviderAuthority(activity);
+            File source;
+            String sourceKey;
+            timer.start();
+            if (!isReference(image)) {
+                sourceKey = ShareCache.hashString(image);
+                timer.stop("hash");
+                source = storeBase64(image, null, sourceKey, timer);
+            } else {
+                Uri uri = Uri.parse(image);
+                File local = resolveLocalFile(uri);
+                if (local != null && local.isFile()) {
+                    if (!isShareableLocalFile(local, activity)) {
+                        throw new SecurityException("Archivo fuera de las rutas compartibles: " + local.getAbsolutePath());
+                    }
+                    source = local;
+                    sourceKey = ShareCache.hashString(local.getAbsolutePath() + ":" + local.length() + ":" + local.lastModified());
+                    timer.stop("resolve");
+                } else {
+                    source = copyReferenceToCache(uri, activity, timer);
+                    sourceKey = ShareCache.hashString(image + ":" + source.length());
+                }
+            }
 
-            String authority = activity.getPackageName() + ".slm.share.fileprovider";
-            return FileProvider.getUriForFile(activity, authority, imageFile);
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(source.getAbsolutePath(), bounds);
+            String sourceMime = MediaTypes.sniffImage(source);
+            if (sourceMime == null) sourceMime = bounds.outMimeType;
+
+            // Undecodable or already small enough, share the bytes as they are
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0
+                    || profile.accepts(bounds.outWidth, bounds.outHeight, sourceMime, source.length())) {
+                if (source.getParentFile() != null && source.getParentFile().equals(shareCache.dir())) {
+                    return FileProvider.getUriForFile(activity, authority, source);
+                }
+                return stageImage(image, activity, timer);
+            }
+
+            Bitmap.CompressFormat format = profile.format != null
+                    ? parseCompressFormat(profile.format) : compressFormatForMime(sourceMime);
+            if (format == null) format = Bitmap.CompressFormat.JPEG;
+            String extension = MediaTypes.extensionForMime(mimeForFormat(format));
+            String key = sourceKey + "_" + profile.key();
+
+            File transcoded = shareCache.lookup(key, extension);
+            if (transcoded == null) {
+                timer.start();
+                timer.beginSection("transcode");
+                try {
+                    byte[] encoded = transcode(source, bounds, profile, format, timer);
+                    transcoded = shareCache.store(key, extension, out -> out.write(encoded));
+                    timer.addBytes(encoded.length);
+                } finally {
+                    timer.endSection();
+                }
+                timer.stop("transcode");
+            }
+            timer.label("profile", profile.key());
+            return FileProvider.getUriForFile(activity, authority, transcoded);
         } catch (Exception e) {
-            Log.e(TAG, "saveBase64ToCache error: " + e.getMessage());
+            // The original is better than nothing
+            Log.e(TAG, "stageImageForProfile error: " + e.getMessage());
+            return stageImage(image, activity, timer);
+        }
+    }
+
+    /**
+     * Decodes sampled to the profile's size and encodes, then trades quality and finally size
+     * for the byte budget. A bounded number of passes keeps the worst case predictable.
+     */
+    private static byte[] transcode(File source, BitmapFactory.Options bounds, ImageProfile profile,
+                                    Bitmap.CompressFormat format, StageTimer timer) throws IOException {
+        Bitmap bitmap = decodeSampled(source, profile.maxDimension, bounds);
+        if (bitmap == null) throw new IOException("No se pudo decodificar la imagen");
+        timer.bitmap(bitmap.getAllocationByteCount());
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int quality = profile.quality;
+            for (int pass = 0; ; pass++) {
+                out.reset();
+                bitmap.compress(format, quality, out);
+                if (profile.maxBytes <= 0 || out.size() <= profile.maxBytes || pass >= TRANSCODE_MAX_PASSES) break;
+
+                if (format != Bitmap.CompressFormat.PNG && quality > TRANSCODE_MIN_QUALITY) {
+                    quality = Math.max(TRANSCODE_MIN_QUALITY, quality - 15);
+                } else {
+                    Bitmap smaller = Bitmap.createScaledBitmap(bitmap,
+                            Math.max(1, Math.round(bitmap.getWidth() * 0.75f)),
+                            Math.max(1, Math.round(bitmap.getHeight() * 0.75f)), true);
+                    if (smaller != bitmap) bitmap.recycle();
+                    bitmap = smaller;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /** Stages an image argument for shareToApp, see {@link #stageFile}. */
+    private Uri stageImage(String image, Activity activity, StageTimer timer) {
+        return stageFile(image, null, activity, timer, null);
+    }
+
+    /**
+     * Returns a shareable Uri for a file argument of any type: base64, or a file://, cdvfile://
+     * or content:// reference. Local files the FileProvider already exposes are granted
+     * in place, other references are copied into the cache with FileChannel, reporting to
+     * progress when given. Copies keep an extension that matches their type, so the
+     * FileProvider reports the right MIME type for them.
+     */
+    private Uri stageFile(String value, String mimeType, Activity activity, StageTimer timer, CopyProgress progress) {
+        if (!isReference(value)) return saveBase64ToCache(value, mimeType, activity, timer);
+
+        try {
+            timer.start();
+            String authority = getFileProviderAuthority(activity);
+            Uri uri = Uri.parse(value);
+
+            File local = resolveLocalFile(uri);
+            if (local != null) {
+                if (!local.isFile()) throw new FileNotFoundException(local.getAbsolutePath());
+                if (!isShareableLocalFile(local, activity)) {
+                    throw new SecurityException("Archivo fuera de las rutas compartibles: " + local.getAbsolutePath());
+                }
+                try {
+                    Uri granted = FileProvider.getUriForFile(activity, authority, local);
+                    timer.stop("resolve");
+                    return granted;
+                } catch (IllegalArgumentException notExposed) {
+                    // External storage outside slm_share_file_paths, fall back to a copy
+                }
+            }
+
+            String extension = extensionOf(uri, activity);
+            File copy = shareCache.newFile("share_", extension != null ? extension : ".part");
+            timer.beginSection("copy");
+            try {
+                copyReference(uri, copy, activity, progress);
+            } finally {
+                timer.endSection();
+            }
+            if (extension == null) copy = withSniffedExtension(copy);
+            timer.stop("copy");
+            timer.addBytes(copy.length());
+            return FileProvider.getUriForFile(activity, authority, copy);
+        } catch (Exception e) {
+            Log.e(TAG, "stageFile error: " + e.getMessage());
             return null;
         }
     }
 
-    private boolean isAppInstalled(PackageManager pm, String packageName) {
+    /**
+     * Stages several files in parallel on the bounded staging executor. Files that fail
+     * are logged and left out, the order of the rest is kept.
+     */
+    private List<Uri> stageFiles(JSONArray files, String mimeType, Activity activity, StageTimer timer,
+                                 CopyProgress progress) {
+        List<StageTimer> fileTimers = new ArrayList<>();
+        List<Future<Uri>> pending = new ArrayList<>();
+        ExecutorService executor = getStagingExecutor();
+        for (int i = 0; i < files.length(); i++) {
+            final String file = files.optString(i, null);
+            if (file == null || file.isEmpty()) continue;
+            final StageTimer fileTimer = timer.child();
+            fileTimers.add(fileTimer);
+            pending.add(executor.submit(() -> stageFile(file, mimeType, activity, fileTimer, progress)));
+        }
+
+        List<Uri> uris = new ArrayList<>();
+        for (Future<Uri> future : pending) {
+            try {
+                Uri uri = future.get();
+                if (uri != null) uris.add(uri);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "stageFiles error: " + e.getCause());
+            }
+        }
+        for (StageTimer fileTimer : fileTimers) timer.addAll(fileTimer);
+        return uris;
+    }
+
+    private synchronized ExecutorService getGalleryExecutor() {
+        if (galleryExecutor == null) galleryExecutor = Executors.newFixedThreadPool(GALLERY_THREADS);
+        return galleryExecutor;
+    }
+
+    private synchronized ExecutorService getStagingExecutor() {
+        if (stagingExecutor == null) {
+            int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            stagingExecutor = Executors.newFixedThreadPool(threads);
+        }
+        return stagingExecutor;
+    }
+
+    /** Writes the bytes of an image argument (base64 or reference) to the target file. */
+    private void writeImageTo(String image, File target, Activity activity, StageTimer timer) throws IOException {
+        if (isReference(image)) {
+            copyReference(Uri.parse(image), target, activity, null);
+            if (timer != null) timer.addBytes(target.length());
+            return;
+        }
+        FileOutputStream fos = new FileOutputStream(target);
         try {
-            pm.getPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
-            return true;
-        } catch (PackageManager.NameNotFoundException e) {
+            decodeBase64ToStream(image, fos, timer);
+        } finally {
+            fos.close();
+        }
+    }
+
+    private static boolean isReference(String image) {
+        return image.startsWith("file://") || image.startsWith("cdvfile://") || image.startsWith("content://");
+    }
+
+    /**
+     * Whether a local file may leave the app: inside the roots slm_share_file_paths exposes,
+     * or in external storage, which other apps can read anyway. Anything else, like the
+     * databases and shared_prefs of the app, is never shared or copied out.
+     */
+    private static boolean isShareableLocalFile(File file, Activity activity) {
+        try {
+            String path = file.getCanonicalPath();
+            File[] roots = {
+                activity.getCacheDir(), activity.getExternalCacheDir(), activity.getFilesDir(),
+                activity.getExternalFilesDir(null), Environment.getExternalStorageDirectory()
+            };
+            for (File root : roots) {
+                if (root == null) continue;
+                String rootPath = root.getCanonicalPath();
+                if (path.equals(rootPath) || path.startsWith(rootPath + File.separator)) return true;
+            }
+            return false;
+        } catch (IOException e) {
             return false;
         }
     }
 
-    private boolean canSendEmail(PackageManager pm) {
-        Intent intent = new Intent(Intent.ACTION_SENDTO);
-        intent.setData(Uri.parse("mailto:"));
-        List<ResolveInfo> resolveInfos = pm.queryIntentActivities(intent, 0);
-        return !resolveInfos.isEmpty();
+    /** Maps file:// and cdvfile:// to a local file, null for anything that is not on disk. */
+    private File resolveLocalFile(Uri uri) {
+        Uri remapped = webView.getResourceApi().remapUri(uri);
+        if (remapped != null && "file".equals(remapped.getScheme()) && remapped.getPath() != null) {
+            return new File(remapped.getPath());
+        }
+        return null;
     }
 
-    private boolean canSendSMS(PackageManager pm) {
-        Intent intent = new Intent(Intent.ACTION_SENDTO);
-        intent.setData(Uri.parse("sms:"));
-        List<ResolveInfo> resolveInfos = pm.queryIntentActivities(intent, 0);
-        return !resolveInfos.isEmpty();
+    /**
+     * Copies a reference into the target using FileChannel, without a heap buffer when the size
+     * is known. Progress, when given, is reported between slices of the copy.
+     */
+    private void copyReference(Uri uri, File target, Activity activity, CopyProgress progress) throws IOException {
+        FileInputStream in;
+        File local = resolveLocalFile(uri);
+        if (local != null) {
+            in = new FileInputStream(local);
+        } else {
+            ParcelFileDescriptor pfd = activity.getContentResolver().openFileDescriptor(uri, "r");
+            if (pfd == null) throw new FileNotFoundException(uri.toString());
+            in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        }
+
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            transferFully(in.getChannel(), out.getChannel(), progress);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void transferFully(FileChannel source, FileChannel target, CopyProgress progress) throws IOException {
+        long size = source.size();
+        if (size > 0) {
+            if (progress != null) progress.expect(size);
+            // One transferTo for the whole file unless progress wants to hear in between
+            long slice = progress != null ? COPY_SLICE_BYTES : size;
+            long position = 0;
+            while (position < size) {
+                long copied = source.transferTo(position, Math.min(slice, size - position), target);
+                position += copied;
+                if (progress != null) progress.add(copied);
+            }
+            return;
+        }
+
+        // Pipes and sockets report no size, copy through a direct buffer instead
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BASE64_CHUNK);
+        while (source.read(buffer) != -1) {
+            buffer.flip();
+            int count = buffer.remaining();
+            while (buffer.hasRemaining()) target.write(buffer);
+            buffer.clear();
+            if (progress != null) progress.add(count);
+        }
+    }
+
+    /**
+     * Reports the bytes copied by a share through keepCallback, throttled to one update every
+     * PROGRESS_INTERVAL_MS. The total grows as each file's size becomes known.
+     */
+    private static final class CopyProgress {
+        private final CallbackContext callbackContext;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong lastReport = new AtomicLong();
+
+        CopyProgress(CallbackContext callbackContext) {
+            this.callbackContext = callbackContext;
+        }
+
+        void expect(long size) {
+            total.addAndGet(size);
+        }
+
+        void add(long count) {
+            long copied = bytes.addAndGet(count);
+            long expected = total.get();
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (copied < expected && now - last < PROGRESS_INTERVAL_MS) return;
+            if (!lastReport.compareAndSet(last, now)) return;
+
+            try {
+                JSONObject update = new JSONObject();
+                update.put("bytes", copied);
+                update.put("total", expected);
+                update.put("progress", expected > 0 ? Math.min(1.0, copied / (double) expected) : -1);
+                PluginResult result = new PluginResult(PluginResult.Status.OK, update);
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+            } catch (JSONException e) {
+                Log.e(TAG, "share progress error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * MIME type of a staged Uri: what the FileProvider derives from the extension, or the
+     * sniffed type when that is unknown.
+     */
+    private static String mimeTypeOf(Uri uri, Activity activity) {
+        ContentResolver resolver = activity.getContentResolver();
+        String type = resolver.getType(uri);
+        if (type != null && !"application/octet-stream".equals(type)) return type;
+        try {
+            InputStream in = resolver.openInputStream(uri);
+            if (in == null) return type;
+            byte[] header = new byte[16];
+            int length = 0;
+            try {
+                int read;
+                while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+                    length += read;
+                }
+            } finally {
+                in.close();
+            }
+            String sniffed = MediaTypes.sniff(header, length);
+            return sniffed != null ? sniffed : type;
+        } catch (IOException e) {
+            return type;
+        }
+    }
+
+    /**
+     * Extension for a copy of the reference: the one in its name, or the provider's type for
+     * content:// without one. Null when neither says.
+     */
+    private static String extensionOf(Uri uri, Activity activity) {
+        String name = uri.getLastPathSegment();
+        int dot = name != null ? name.lastIndexOf('.') : -1;
+        if (dot >= 0 && name.length() - dot <= 6) return name.substring(dot).toLowerCase(Locale.US);
+        if (!"content".equals(uri.getScheme())) return null;
+
+        String type = activity.getContentResolver().getType(uri);
+        if (type == null) return null;
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(type);
+        return extension != null ? "." + extension : MediaTypes.extensionForMime(type);
+    }
+
+    /** Renames a copy made without a known extension after its sniffed type. */
+    private static File withSniffedExtension(File file) throws IOException {
+        String mimeType = MediaTypes.sniff(file);
+        String name = file.getName();
+        String base = name.substring(0, name.lastIndexOf('.'));
+        File named = new File(file.getParentFile(), base + MediaTypes.extensionForMime(
+                mimeType != null ? mimeType : "application/octet-stream"));
+        return file.renameTo(named) ? named : file;
+    }
+
+    /**
+     * Copies a content:// (or other non-local) reference into the cache keyed by the URI and
+     * its size, so sharing the same source again finds the copy instead of reading it anew.
+     * Without a size from the provider or an extension the copy is made and keyed afterwards,
+     * which still leaves a single cached file.
+     */
+    private File copyReferenceToCache(Uri uri, Activity activity, StageTimer timer) throws IOException {
+        String extension = extensionOf(uri, activity);
+        long size = statSize(uri, activity);
+        String key = size >= 0 ? ShareCache.hashString(uri + ":" + size) : null;
+        if (key != null && extension != null) {
+            File cached = shareCache.lookup(key, extension);
+            if (cached != null) {
+                timer.stop("resolve");
+                return cached;
+            }
+        }
+
+        File temp = shareCache.newFile("share_", ".part");
+        try {
+            copyReference(uri, temp, activity, null);
+            if (key == null) key = ShareCache.hashString(uri + ":" + temp.length());
+            if (extension == null) {
+                String mimeType = MediaTypes.sniff(temp);
+                extension = MediaTypes.extensionForMime(mimeType != null ? mimeType : "application/octet-stream");
+            }
+            File copy = shareCache.adopt(temp, key, extension);
+            timer.stop("copy");
+            timer.addBytes(copy.length());
+            return copy;
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /** Size the provider reports for a reference, -1 when it does not know. */
+    private static long statSize(Uri uri, Activity activity) {
+        try {
+            ParcelFileDescriptor pfd = activity.getContentResolver().openFileDescriptor(uri, "r");
+            if (pfd == null) return -1;
+            try {
+                long size = pfd.getStatSize();
+                return size >= 0 ? size : -1;
+            } finally {
+                pfd.close();
+            }
+        } catch (IOException | SecurityException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Decodes the image with the largest power-of-two sample size that keeps it at least
+     * maxDimension, then scales the remainder exactly.
+     */
+    private static Bitmap decodeSampled(File source, int maxDimension, BitmapFactory.Options bounds) {
+        int longest = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        if (maxDimension > 0) {
+            while (longest / (options.inSampleSize * 2) >= maxDimension) options.inSampleSize *= 2;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(source.getAbsolutePath(), options);
+        if (bitmap == null || maxDimension <= 0) return bitmap;
+
+        int decodedLongest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (decodedLongest <= maxDimension) return bitmap;
+
+        float scale = (float) maxDimension / decodedLongest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    private static Bitmap.CompressFormat parseCompressFormat(String format) {
+        if (format == null) return null;
+        switch (format.toLowerCase(Locale.US)) {
+            case "png":
+                return Bitmap.CompressFormat.PNG;
+            case "jpg":
+            case "jpeg":
+                return Bitmap.CompressFormat.JPEG;
+            case "webp":
+                return webpFormat();
+            default:
+                return null;
+        }
+    }
+
+    private static Bitmap.CompressFormat compressFormatForMime(String mimeType) {
+        if ("image/png".equals(mimeType)) return Bitmap.CompressFormat.PNG;
+        if ("image/webp".equals(mimeType)) return webpFormat();
+        return Bitmap.CompressFormat.JPEG;
+    }
+
+    /** Lossy WebP; the plain WEBP constant is deprecated from API 30 on. */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static String mimeForFormat(Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return "image/png";
+            case JPEG:
+                return "image/jpeg";
+            default:
+                return "image/webp";
+        }
+    }
+
+    private static String getFileProviderAuthority(Activity activity) {
+        return activity.getPackageName() + ".slm.share.fileprovider";
+    }
+
+    /**
+     * Decodes base64 into the stream through Base64Decoder's fixed buffers, so peak memory
+     * does not grow with the payload. Decode and write time are added to the timer when one is given.
+     */
+    private static long decodeBase64ToStream(String base64, OutputStream out, StageTimer timer) throws IOException {
+        if (timer == null) return Base64Decoder.decode(base64, out, BASE64_CHUNK, null);
+        timer.beginSection("decode");
+        try {
+            long written = Base64Decoder.decode(base64, out, BASE64_CHUNK, (decodeNanos, writeNanos) -> {
+                timer.add("decode", decodeNanos);
+                timer.add("write", writeNanos);
+            });
+            timer.addBytes(written);
+            return written;
+        } finally {
+            timer.endSection();
+        }
+    }
+
+    /**
+     * Per-stage wall time of a share call (decode, write, intent), returned to JS as "timings".
+     * Stages may run on different threads, so access is synchronized.
+     */
+    private static final class StageTimer {
+        private final long createdAt = System.nanoTime();
+        private final Map<String, Long> stages = new LinkedHashMap<>();
+        private final Map<String, String> labels = new LinkedHashMap<>();
+        private final ShareMetrics tracer;
+        private long mark = createdAt;
+        private long bytes;
+        private long peakBitmapBytes;
+
+        StageTimer() {
+            this(null);
+        }
+
+        /** A timer whose sections also show up in systrace when the metrics have tracing on. */
+        StageTimer(ShareMetrics tracer) {
+            this.tracer = tracer;
+        }
+
+        /** A separate timer for work running in parallel, folded back with addAll. */
+        StageTimer child() {
+            return new StageTimer(tracer);
+        }
+
+        synchronized void start() {
+            mark = System.nanoTime();
+        }
+
+        /** Records the time since the last start/stop under the given stage. */
+        synchronized void stop(String stage) {
+            add(stage, System.nanoTime() - mark);
+        }
+
+        /** Adds a duration measured by the caller, for stages that interleave. */
+        synchronized void add(String stage, long nanos) {
+            Long previous = stages.get(stage);
+            stages.put(stage, (previous != null ? previous : 0L) + nanos);
+            mark = System.nanoTime();
+        }
+
+        /** Counts bytes decoded, copied or compressed by this call. */
+        synchronized void addBytes(long count) {
+            bytes += count;
+        }
+
+        /** Records the size of a bitmap this call allocated or borrowed, keeping the largest. */
+        synchronized void bitmap(long byteCount) {
+            peakBitmapBytes = Math.max(peakBitmapBytes, byteCount);
+        }
+
+        /** Trace sections are per thread, close them on the thread that opened them. */
+        void beginSection(String stage) {
+            if (tracer != null) tracer.beginSection(stage);
+        }
+
+        void endSection() {
+            if (tracer != null) tracer.endSection();
+        }
+
+        /** Attaches a descriptive value, e.g. which capture path ran. */
+        synchronized void label(String key, String value) {
+            labels.put(key, value);
+        }
+
+        /** Adds every stage of another timer, used to fold per-file timers of a batch. */
+        void addAll(StageTimer other) {
+            Map<String, Long> snapshot = other.stages();
+            long otherBytes;
+            long otherPeak;
+            synchronized (other) {
+                otherBytes = other.bytes;
+                otherPeak = other.peakBitmapBytes;
+            }
+            for (Map.Entry<String, Long> entry : snapshot.entrySet()) add(entry.getKey(), entry.getValue());
+            addBytes(otherBytes);
+            bitmap(otherPeak);
+        }
+
+        synchronized Map<String, Long> stages() {
+            return new LinkedHashMap<>(stages);
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized long peakBitmapBytes() {
+            return peakBitmapBytes;
+        }
+
+        synchronized JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Long> entry : stages.entrySet()) {
+                json.put(entry.getKey() + "Ms", entry.getValue() / 1e6);
+            }
+            for (Map.Entry<String, String> entry : labels.entrySet()) {
+                json.put(entry.getKey(), entry.getValue());
+            }
+            json.put("totalMs", (mark - createdAt) / 1e6);
+            return json;
+        }
     }
 }
@@ -0,0 +1,219 @@
+package com.slm.share;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The slm_share cache directory exposed by the FileProvider. Payloads are stored under their
+ * content hash so identical shares are written once, and the directory is kept under a size
+ * and age limit by {@link #trim()}.
+ */
+final class ShareCache {
+
+    /** Writes a payload into the cache, see {@link #store(String, String, Writer)}. */
+    interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Files this recent are never evicted, a chooser may still be reading them
+    private static final long MIN_AGE_MS = 5 * 60 * 1000L;
+    // Suffix of files still being written (uploads, decodes, captures)
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File dir;
+    private final long maxBytes;
+    private final long maxAgeMs;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ShareCache(File dir, long maxBytes, long maxAgeMs) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    File dir() {
+        if (!dir.exists()) dir.mkdirs();
+        return dir;
+    }
+
+    /** A uniquely named file that is not deduplicated, for scratch files and copies. */
+    File newFile(String prefix, String extension) {
+        return new File(dir(), prefix + System.currentTimeMillis() + "_" + sequence.incrementAndGet() + extension);
+    }
+
+    /**
+     * Returns the cached file for a key (usually a content hash), or null. A hit refreshes the
+     * file's LRU position.
+     */
+    File lookup(String key, String extension) {
+        File file = new File(dir(), key + extension);
+        if (!file.isFile()) return null;
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        return file;
+    }
+
+    /**
+     * Stores a payload under the key, writing it only when no file with that key exists yet.
+     * A null key hashes the written bytes instead, which still deduplicates the stored copy.
+     */
+    File store(String key, String extension, Writer writer) throws IOException {
+        if (key != null) {
+            File cached = lookup(key, extension);
+            if (cached != null) return cached;
+        }
+
+        File temp = newFile("tmp_", ".part");
+        try {
+            MessageDigest digest = key == null ? newDigest() : null;
+            OutputStream out = new FileOutputStream(temp);
+            if (digest != null) out = new DigestOutputStream(out, digest);
+            try {
+                writer.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            return adopt(temp, key != null ? key : toHex(digest.digest()), extension);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /**
+     * Moves a finished temp file in under the key, or drops it when that key is already
+     * cached. Used for payloads written in several steps, like chunked transfers.
+     */
+    File adopt(File temp, String key, String extension) throws IOException {
+        File target = new File(dir(), key + extension);
+        if (target.isFile()) {
+            // Same bytes already cached, keep the existing file
+            target.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            temp.delete();
+            return target;
+        }
+        if (!temp.renameTo(target)) throw new IOException("No se pudo guardar en cache: " + target.getName());
+        misses.incrementAndGet();
+        return target;
+    }
+
+    /**
+     * Deletes files older than the age limit, then the least recently used ones until the
+     * directory fits the size limit. Files still being written (*.part) are never evicted for
+     * size, only once past the age limit, when a killed process left them behind. Returns the
+     * number of bytes freed.
+     */
+    synchronized long trim() {
+        File[] files = dir().listFiles();
+        if (files == null) return 0;
+
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (File file : files) total += file.length();
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long freed = 0;
+        for (File file : files) {
+            long age = now - file.lastModified();
+            if (age < MIN_AGE_MS) break;
+            if (file.getName().endsWith(PARTIAL_SUFFIX)) {
+                if (age <= maxAgeMs) continue;
+            } else if (age <= maxAgeMs && total <= maxBytes) {
+                break;
+            }
+
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                freed += length;
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Deletes every cached file except the ones trim() also protects: files still being
+     * written (*.part) and files younger than MIN_AGE_MS, which a chooser or a staging copy
+     * may still be using. Returns the number of bytes freed.
+     */
+    synchronized long clear() {
+        File[] files = dir().listFiles();
+        if (files == null) return 0;
+
+        long now = System.currentTimeMillis();
+        long freed = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(PARTIAL_SUFFIX) || now - file.lastModified() < MIN_AGE_MS) continue;
+            long length = file.length();
+            if (file.delete()) freed += length;
+        }
+        return freed;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        File[] files = dir().listFiles();
+        long bytes = 0;
+        if (files != null) {
+            for (File file : files) bytes += file.length();
+        }
+
+        JSONObject stats = new JSONObject();
+        stats.put("files", files != null ? files.length : 0);
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    /** SHA-1 of the base64 text, so a repeated payload is found before it is decoded. */
+    static String hashString(String value) {
+        MessageDigest digest = newDigest();
+        char[] chars = new char[8192];
+        byte[] bytes = new byte[chars.length * 2];
+        for (int offset = 0; offset < value.length(); offset += chars.length) {
+            int count = Math.min(chars.length, value.length() - offset);
+            value.getChars(offset, offset + count, chars, 0);
+            for (int i = 0; i < count; i++) {
+                bytes[i * 2] = (byte) (chars[i] >> 8);
+                bytes[i * 2 + 1] = (byte) chars[i];
+            }
+            digest.update(bytes, 0, count * 2);
+        }
+        return toHex(digest.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
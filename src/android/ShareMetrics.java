@@ -0,0 +1,197 @@
+package com.slm.share;
+
+import android.os.Build;
+import android.os.Trace;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-action counters and latency histograms, recorded when an action sends its final result.
+ * Everything is updated with atomics only, so recording never blocks a share in flight.
+ * Optional android.os.Trace sections make the same stages visible in systrace/Perfetto.
+ */
+final class ShareMetrics {
+
+    private final boolean tracing;
+    private final Map<String, ActionMetrics> actions = new ConcurrentHashMap<>();
+    private final AtomicInteger traceCookie = new AtomicInteger();
+    private volatile long since = System.currentTimeMillis();
+
+    ShareMetrics(boolean tracing) {
+        this.tracing = tracing;
+    }
+
+    /** Records one finished call of an action, stage durations in nanoseconds. */
+    void record(String action, boolean ok, long totalNanos, Map<String, Long> stages, long bytes, long peakBitmapBytes) {
+        ActionMetrics metrics = actions.get(action);
+        if (metrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            metrics = actions.putIfAbsent(action, created);
+            if (metrics == null) metrics = created;
+        }
+        metrics.record(ok, totalNanos, stages, bytes, peakBitmapBytes);
+    }
+
+    void reset() {
+        actions.clear();
+        since = System.currentTimeMillis();
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, ActionMetrics> entry : actions.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJSON());
+        }
+        JSONObject result = new JSONObject();
+        result.put("since", since);
+        result.put("tracing", tracing);
+        result.put("actions", json);
+        return result;
+    }
+
+    // ============================================
+    // Trace sections
+    // ============================================
+
+    /** Opens a synchronous trace section, must be closed on the same thread. */
+    void beginSection(String name) {
+        if (tracing) Trace.beginSection("SLMShare." + name);
+    }
+
+    void endSection() {
+        if (tracing) Trace.endSection();
+    }
+
+    /** Opens a section that may end on another thread, returns its cookie or 0 when off. */
+    int beginAsync(String name) {
+        if (!tracing || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return 0;
+        int cookie = traceCookie.incrementAndGet();
+        Trace.beginAsyncSection("SLMShare." + name, cookie);
+        return cookie;
+    }
+
+    void endAsync(String name, int cookie) {
+        if (cookie != 0) Trace.endAsyncSection("SLMShare." + name, cookie);
+    }
+
+    // ============================================
+    // Recording
+    // ============================================
+
+    private static final class ActionMetrics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong peakBitmapBytes = new AtomicLong();
+        private final Histogram latency = new Histogram();
+        private final Map<String, Histogram> stages = new ConcurrentHashMap<>();
+
+        void record(boolean ok, long totalNanos, Map<String, Long> stageNanos, long processed, long peakBitmap) {
+            count.incrementAndGet();
+            if (!ok) errors.incrementAndGet();
+            bytes.addAndGet(processed);
+            updateMax(peakBitmapBytes, peakBitmap);
+            latency.record(totalNanos);
+            if (stageNanos == null) return;
+            for (Map.Entry<String, Long> entry : stageNanos.entrySet()) {
+                Histogram histogram = stages.get(entry.getKey());
+                if (histogram == null) {
+                    Histogram created = new Histogram();
+                    histogram = stages.putIfAbsent(entry.getKey(), created);
+                    if (histogram == null) histogram = created;
+                }
+                histogram.record(entry.getValue());
+            }
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count.get());
+            json.put("errors", errors.get());
+            json.put("bytes", bytes.get());
+            json.put("peakBitmapBytes", peakBitmapBytes.get());
+            json.put("latency", latency.toJSON());
+            JSONObject stageJson = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+                stageJson.put(entry.getKey(), entry.getValue().toJSON());
+            }
+            json.put("stages", stageJson);
+            return json;
+        }
+    }
+
+    /**
+     * Log-linear histogram of durations in microseconds: every power of two is split into
+     * eight buckets, so a percentile is off by at most 12.5%.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            buckets.incrementAndGet(bucketOf(micros));
+            count.incrementAndGet();
+            sum.addAndGet(micros);
+            updateMax(max, micros);
+        }
+
+        /** Upper bound in microseconds of the bucket holding the given percentile (0-100). */
+        long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBoundOf(i), max.get());
+            }
+            return max.get();
+        }
+
+        JSONObject toJSON() throws JSONException {
+            long total = count.get();
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            json.put("meanMs", total > 0 ? sum.get() / (double) total / 1000.0 : 0);
+            json.put("p50Ms", percentile(50) / 1000.0);
+            json.put("p95Ms", percentile(95) / 1000.0);
+            json.put("p99Ms", percentile(99) / 1000.0);
+            json.put("maxMs", max.get() / 1000.0);
+            return json;
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_COUNT) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+            return (exponent - SUB_BITS + 1) * SUB_COUNT + mantissa;
+        }
+
+        static long upperBoundOf(int bucket) {
+            if (bucket < SUB_COUNT) return bucket;
+            int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+            int mantissa = bucket % SUB_COUNT;
+            long width = 1L << (exponent - SUB_BITS);
+            return ((SUB_COUNT + mantissa) * width) + width - 1;
+        }
+    }
+
+    private static void updateMax(AtomicLong target, long value) {
+        long current = target.get();
+        while (value > current && !target.compareAndSet(current, value)) current = target.get();
+    }
+}
@@ -0,0 +1,359 @@
+package com.slm.share;
+
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of shareToApp targets. Each target is a declarative row (packages in fallback
+ * order, action, MIME rules, URI templates), built in below with Target.Builder or
+ * registered from JS as JSON. A target
+ * is resolved against the PackageManager once and keeps a prebuilt template Intent until
+ * packages change, so a share only copies the template and adds its extras.
+ */
+final class ShareTargets {
+
+    private static final int DEFAULT_QUALITY = 90;
+
+    // Templates take {text}, {url} (URI-encoded), {phone} and {phoneDigits}.
+    // maxDimension/quality follow what each app re-encodes to anyway
+    private static List<Target> builtIn() {
+        List<Target> list = new ArrayList<>();
+        list.add(new Target.Builder("whatsapp").packages("com.whatsapp", "com.whatsapp.w4b")
+                .image("stream").phoneUri("https://wa.me/{phoneDigits}?text={text}").profile(1600, 85).build());
+        list.add(new Target.Builder("telegram").packages("org.telegram.messenger")
+                .image("stream").profile(2560, DEFAULT_QUALITY).build());
+        list.add(new Target.Builder("instagram").packages("com.instagram.android")
+                .image("data").imageAction("com.instagram.share.ADD_TO_STORY").launchIfNoImage(true)
+                .profile(1920, DEFAULT_QUALITY).build());
+        list.add(new Target.Builder("facebook").packages("com.facebook.katana", "com.facebook.lite")
+                .urlOrText(true).build());
+        list.add(new Target.Builder("twitter").packages("com.twitter.android", "com.twitter.android.lite").build());
+        list.add(new Target.Builder("email").action(Intent.ACTION_SENDTO).data("mailto:").separator("\n").build());
+        list.add(new Target.Builder("sms").action(Intent.ACTION_SENDTO).data("sms:{phone}").textExtra("sms_body").build());
+        return list;
+    }
+
+    /** One target definition, immutable once built. */
+    static final class Target {
+        final String id;
+        final List<String> packages;
+        final String action;
+        final String mimeType;
+        final String data;
+        final String textExtra;
+        final String separator;
+        final boolean urlOrText;
+        final String image;
+        final String imageAction;
+        final String imageType;
+        final String phoneUri;
+        final boolean launchIfNoImage;
+        final ImageProfile profile;
+
+        private Target(Builder builder) {
+            if (builder.id == null || builder.id.isEmpty()) throw new IllegalArgumentException("Target sin id");
+            if (builder.image != null && !"stream".equals(builder.image) && !"data".equals(builder.image)) {
+                throw new IllegalArgumentException("image debe ser \"stream\" o \"data\": " + builder.image);
+            }
+            if (builder.packages.isEmpty() && builder.data == null) {
+                throw new IllegalArgumentException("Target sin packages ni data: " + builder.id);
+            }
+            id = builder.id;
+            packages = Collections.unmodifiableList(new ArrayList<>(builder.packages));
+            action = builder.action;
+            mimeType = builder.mimeType;
+            data = builder.data;
+            textExtra = builder.textExtra;
+            separator = builder.separator;
+            urlOrText = builder.urlOrText;
+            image = builder.image;
+            imageAction = builder.imageAction != null ? builder.imageAction : builder.action;
+            imageType = builder.imageType;
+            phoneUri = builder.phoneUri;
+            launchIfNoImage = builder.launchIfNoImage;
+            profile = builder.profile;
+        }
+
+        /** Reads a target registered from JS. */
+        static Target fromJSON(JSONObject definition) throws JSONException {
+            Builder builder = new Builder(definition.optString("id", ""));
+            JSONArray list = definition.optJSONArray("packages");
+            if (list != null) {
+                for (int i = 0; i < list.length(); i++) {
+                    String name = list.optString(i, "");
+                    if (!name.isEmpty()) builder.packages(name);
+                }
+            } else if (definition.has("package")) {
+                builder.packages(definition.getString("package"));
+            }
+            builder.action(definition.optString("action", Intent.ACTION_SEND))
+                    .mimeType(definition.optString("mimeType", "text/plain"))
+                    .data(definition.optString("data", null))
+                    .textExtra(definition.optString("textExtra", Intent.EXTRA_TEXT))
+                    .separator(definition.optString("separator", " "))
+                    .urlOrText("urlOrText".equals(definition.optString("textMode", "join")))
+                    .image(definition.optString("image", null))
+                    .imageAction(definition.optString("imageAction", null))
+                    .imageType(definition.optString("imageType", "image/*"))
+                    .phoneUri(definition.optString("phoneUri", null))
+                    .launchIfNoImage(definition.optBoolean("launchIfNoImage", false));
+            builder.profile = ImageProfile.fromJSON(definition, DEFAULT_QUALITY);
+            try {
+                return builder.build();
+            } catch (IllegalArgumentException e) {
+                throw new JSONException(e.getMessage());
+            }
+        }
+
+        /** Defaults match a registered target that only sets id and packages. */
+        static final class Builder {
+            private final String id;
+            private final List<String> packages = new ArrayList<>();
+            private String action = Intent.ACTION_SEND;
+            private String mimeType = "text/plain";
+            private String data;
+            private String textExtra = Intent.EXTRA_TEXT;
+            private String separator = " ";
+            private boolean urlOrText;
+            private String image;
+            private String imageAction;
+            private String imageType = "image/*";
+            private String phoneUri;
+            private boolean launchIfNoImage;
+            private ImageProfile profile;
+
+            Builder(String id) {
+                this.id = id;
+            }
+
+            /** Packages in fallback order, the first installed one is used. */
+            Builder packages(String... names) {
+                Collections.addAll(packages, names);
+                return this;
+            }
+
+            Builder action(String action) {
+                this.action = action;
+                return this;
+            }
+
+            Builder mimeType(String mimeType) {
+                this.mimeType = mimeType;
+                return this;
+            }
+
+            /** URI template set as the intent data, for scheme targets like mailto: and sms:. */
+            Builder data(String data) {
+                this.data = data;
+                return this;
+            }
+
+            Builder textExtra(String textExtra) {
+                this.textExtra = textExtra;
+                return this;
+            }
+
+            Builder separator(String separator) {
+                this.separator = separator;
+                return this;
+            }
+
+            /** Sends the url alone when there is one, the text otherwise, instead of joining them. */
+            Builder urlOrText(boolean urlOrText) {
+                this.urlOrText = urlOrText;
+                return this;
+            }
+
+            /** "stream" attaches the image as EXTRA_STREAM, "data" sends it as the intent data. */
+            Builder image(String image) {
+                this.image = image;
+                return this;
+            }
+
+            Builder imageAction(String imageAction) {
+                this.imageAction = imageAction;
+                return this;
+            }
+
+            Builder imageType(String imageType) {
+                this.imageType = imageType;
+                return this;
+            }
+
+            Builder phoneUri(String phoneUri) {
+                this.phoneUri = phoneUri;
+                return this;
+            }
+
+            Builder launchIfNoImage(boolean launchIfNoImage) {
+                this.launchIfNoImage = launchIfNoImage;
+                return this;
+            }
+
+            Builder profile(int maxDimension, int quality) {
+                this.profile = new ImageProfile(maxDimension, null, quality, 0);
+                return this;
+            }
+
+            Target build() {
+                return new Target(this);
+            }
+        }
+
+        /** Whether a share with these arguments attaches the image, so staging can be skipped. */
+        boolean usesImage(String phoneNumber) {
+            return image != null && !(phoneNumber != null && phoneUri != null);
+        }
+
+        String text(String text, String url) {
+            if (urlOrText) return url != null ? url : (text != null ? text : "");
+            return ShareText.join(text, url, separator);
+        }
+    }
+
+    /** A target checked against the installed packages. */
+    private static final class Resolved {
+        final String packageName;
+        final boolean available;
+        final Intent template;
+
+        Resolved(String packageName, boolean available, Intent template) {
+            this.packageName = packageName;
+            this.available = available;
+            this.template = template;
+        }
+    }
+
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private final Map<String, Resolved> resolved = new LinkedHashMap<>();
+
+    ShareTargets() {
+        for (Target target : builtIn()) register(target);
+    }
+
+    /** Adds a target registered from JS, or replaces the one with the same id. */
+    Target register(JSONObject definition) throws JSONException {
+        return register(Target.fromJSON(definition));
+    }
+
+    synchronized Target register(Target target) {
+        targets.put(target.id, target);
+        resolved.remove(target.id);
+        return target;
+    }
+
+    synchronized Target get(String id) {
+        return targets.get(id);
+    }
+
+    /** Drops every resolution, called when a package is installed or removed. */
+    synchronized void invalidate() {
+        resolved.clear();
+    }
+
+    /** Availability of every target by id, resolving the ones not seen since the last change. */
+    synchronized JSONObject availability(PackageManager pm) throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Target target : targets.values()) {
+            result.put(target.id, resolve(target, pm).available);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the Intent for one share, or null when the target needs an app that cannot be
+     * launched. Runs after the image, if any, has been staged.
+     */
+    Intent buildIntent(Target target, PackageManager pm, String text, String url, Uri imageUri, String phoneNumber) {
+        Resolved entry;
+        synchronized (this) {
+            entry = resolve(target, pm);
+        }
+        String shareText = target.text(text, url);
+
+        if (phoneNumber != null && target.phoneUri != null) {
+            // Direct to number
+            return new Intent(Intent.ACTION_VIEW, Uri.parse(expand(target.phoneUri, shareText, url, phoneNumber)));
+        }
+        if (imageUri == null && target.launchIfNoImage) {
+            return entry.packageName != null ? pm.getLaunchIntentForPackage(entry.packageName) : null;
+        }
+        if (imageUri != null && "data".equals(target.image)) {
+            Intent intent = new Intent(target.imageAction);
+            if (entry.packageName != null) intent.setPackage(entry.packageName);
+            intent.setDataAndType(imageUri, target.imageType);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            return intent;
+        }
+
+        Intent intent = new Intent(entry.template);
+        if (target.data != null) intent.setData(Uri.parse(expand(target.data, shareText, url, phoneNumber)));
+        intent.putExtra(target.textExtra, shareText);
+        if (imageUri != null && "stream".equals(target.image)) {
+            intent.setType(target.imageType);
+            intent.putExtra(Intent.EXTRA_STREAM, imageUri);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        }
+        return intent;
+    }
+
+    private Resolved resolve(Target target, PackageManager pm) {
+        Resolved entry = resolved.get(target.id);
+        if (entry != null) return entry;
+
+        // First installed package wins, the primary one is kept so the launch can still try it
+        String packageName = null;
+        for (String candidate : target.packages) {
+            if (isInstalled(pm, candidate)) {
+                packageName = candidate;
+                break;
+            }
+        }
+        boolean available = packageName != null;
+        if (packageName == null && !target.packages.isEmpty()) packageName = target.packages.get(0);
+
+        Intent template = new Intent(target.action);
+        if (packageName != null) template.setPackage(packageName);
+        if (target.data == null) template.setType(target.mimeType);
+        if (target.packages.isEmpty()) {
+            // System handlers (mail, sms) count when something answers the bare scheme
+            Intent probe = new Intent(template);
+            probe.setData(Uri.parse(expand(target.data, "", null, "")));
+            available = !pm.queryIntentActivities(probe, 0).isEmpty();
+        }
+
+        entry = new Resolved(packageName, available, template);
+        // A target replaced meanwhile keeps its own resolution out of the cache
+        if (targets.get(target.id) == target) resolved.put(target.id, entry);
+        return entry;
+    }
+
+    private static boolean isInstalled(PackageManager pm, String packageName) {
+        try {
+            pm.getPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
+            return true;
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static String expand(String template, String text, String url, String phoneNumber) {
+        String phone = phoneNumber != null ? phoneNumber : "";
+        return template
+                .replace("{text}", Uri.encode(text != null ? text : ""))
+                .replace("{url}", Uri.encode(url != null ? url : ""))
+                .replace("{phoneDigits}", phone.replaceAll("[^0-9]", ""))
+                .replace("{phone}", phone);
+    }
+}
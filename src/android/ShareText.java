@@ -0,0 +1,17 @@
+package com.slm.share;
+
+/** Builds the text a share intent carries from the text and url options. */
+final class ShareText {
+
+    private ShareText() {
+    }
+
+    /** Joins text and url with the separator, skipping whichever is missing. Never null. */
+    static String join(String text, String url, String separator) {
+        boolean hasText = text != null && !text.isEmpty();
+        boolean hasUrl = url != null && !url.isEmpty();
+        if (hasText && hasUrl) return text + separator + url;
+        if (hasText) return text;
+        return hasUrl ? url : "";
+    }
+}
@@ -1,6 +1,8 @@
 import UIKit
 import Photos
+import ImageIO
 import WebKit
+import CommonCrypto
 
 @objc(SLMShare) class SLMShare: CDVPlugin {
 
@@ -9,52 +11,275 @@ import WebKit
     @objc(share:)
     func share(command: CDVInvokedUrlCommand) {
         let options = command.argument(at: 0) as? [String: Any] ?? [:]
-        let text = options["text"] as? String
-        let urlString = options["url"] as? String
-        let imageBase64 = options["image"] as? String
 
+        if let handle = options["handle"] as? String {
+            DispatchQueue.main.async {
+                guard let prepared = self.preparedShares.removeValue(forKey: handle), prepared.expiresAt > Date() else {
+                    let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Share preparado no encontrado o expirado: \(handle)")
+                    self.commandDelegate.send(result, callbackId: command.callbackId)
+                    return
+                }
+                self.presentActivityItems(prepared.items, options: options, command: command)
+            }
+            return
+        }
+
+        // Decoding and writing payloads off the main thread, only the sheet goes back to it
+        commandDelegate.run {
+            let activityItems = self.activityItems(for: options)
+            if activityItems.isEmpty {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No hay contenido para compartir")
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+
+            DispatchQueue.main.async {
+                self.presentActivityItems(activityItems, options: options, command: command)
+            }
+        }
+    }
+
+    /// Text, url and image or files options as share sheet items, images loaded from disk or decoded.
+    /// Background thread.
+    private func activityItems(for options: [String: Any]) -> [Any] {
         var activityItems: [Any] = []
 
-        if let text = text { activityItems.append(text) }
-        if let urlString = urlString, let url = URL(string: urlString) { activityItems.append(url) }
-        if let imageBase64 = imageBase64,
-           let imageData = Data(base64Encoded: imageBase64),
-           let image = UIImage(data: imageData) {
-            activityItems.append(image)
+        if let text = options["text"] as? String { activityItems.append(text) }
+        if let urlString = options["url"] as? String, let url = URL(string: urlString) { activityItems.append(url) }
+        if let files = options["files"] as? [String], !files.isEmpty {
+            // Several items go into a single UIActivityViewController
+            activityItems.append(contentsOf: files.compactMap { shareItem(for: $0) })
+        } else if let imageBase64 = options["image"] as? String, let item = shareItem(for: imageBase64) {
+            activityItems.append(item)
         }
+        return activityItems
+    }
 
-        if activityItems.isEmpty {
-            let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No hay contenido para compartir")
-            commandDelegate.send(result, callbackId: command.callbackId)
-            return
+    /// Main thread.
+    private func presentActivityItems(_ activityItems: [Any], options: [String: Any], command: CDVInvokedUrlCommand) {
+        let request = ShareRequest(options: options)
+        let activityVC = UIActivityViewController(activityItems: activityItems, applicationActivities: nil)
+
+        activityVC.completionWithItemsHandler = { activityType, completed, _, error in
+            guard self.finishShare(request) else { return }
+
+            if let error = error {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: error.localizedDescription)
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+
+            var info: [String: Any] = ["completed": completed]
+            if let activityType = activityType {
+                info["app"] = activityType.rawValue
+            }
+            if let requestId = request.requestId { info["requestId"] = requestId }
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
+            self.commandDelegate.send(result, callbackId: command.callbackId)
         }
 
-        DispatchQueue.main.async {
-            let activityVC = UIActivityViewController(activityItems: activityItems, applicationActivities: nil)
+        self.presentShareSheet(activityVC, request: request, callbackId: command.callbackId)
+    }
 
-            activityVC.completionWithItemsHandler = { activityType, completed, _, error in
-                if let error = error {
-                    let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: error.localizedDescription)
+    // MARK: - prepareShare
+
+    /// Prepared items live as long as Android keeps its handles.
+    private static let preparedShareTTL: TimeInterval = 5 * 60
+    private var preparedShares: [String: (items: [Any], expiresAt: Date)] = [:]
+    private var preparedSequence = 0
+
+    /// Loads and decodes the share items ahead of time, share({ handle }) then only presents the sheet.
+    @objc(prepareShare:)
+    func prepareShare(command: CDVInvokedUrlCommand) {
+        let options = command.argument(at: 0) as? [String: Any] ?? [:]
+        var ttl = SLMShare.preparedShareTTL
+        if let ttlMs = options["ttl"] as? Double, ttlMs > 0 { ttl = min(ttl, ttlMs / 1000) }
+
+        commandDelegate.run {
+            let items = self.activityItems(for: options)
+            DispatchQueue.main.async {
+                if items.isEmpty {
+                    let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No hay contenido para compartir")
                     self.commandDelegate.send(result, callbackId: command.callbackId)
                     return
                 }
 
-                var info: [String: Any] = ["completed": completed]
-                if let activityType = activityType {
-                    info["app"] = activityType.rawValue
-                }
+                // Expired handles are dropped whenever a new one is made
+                let now = Date()
+                self.preparedShares = self.preparedShares.filter { $0.value.expiresAt > now }
+                self.preparedSequence += 1
+                let handle = "prep_\(self.preparedSequence)"
+                let expiresAt = now.addingTimeInterval(ttl)
+                self.preparedShares[handle] = (items, expiresAt)
+
+                let info: [String: Any] = ["handle": handle, "expiresAt": Int64(expiresAt.timeIntervalSince1970 * 1000)]
                 let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
                 self.commandDelegate.send(result, callbackId: command.callbackId)
             }
+        }
+    }
+
+    @objc(releaseShare:)
+    func releaseShare(command: CDVInvokedUrlCommand) {
+        let handle = command.argument(at: 0) as? String ?? ""
+        DispatchQueue.main.async {
+            let released = self.preparedShares.removeValue(forKey: handle) != nil
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: ["released": released])
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
+
+    // MARK: - Chunked transfers
+
+    /// Same chunk size and window Android hands out, idle transfers are dropped after two minutes.
+    private static let transferChunkBytes = 256 * 1024
+    private static let transferWindow = 4
+    private static let transferIdle: TimeInterval = 2 * 60
+
+    private final class Transfer {
+        let url: URL
+        let handle: FileHandle
+        let expectedBytes: Int
+        let mimeType: String?
+        var context = CC_SHA1_CTX()
+        var nextSeq = 0
+        var bytes = 0
+        var lastActivity = Date()
+
+        init(url: URL, handle: FileHandle, expectedBytes: Int, mimeType: String?) {
+            self.url = url
+            self.handle = handle
+            self.expectedBytes = expectedBytes
+            self.mimeType = mimeType
+            CC_SHA1_Init(&context)
+        }
+
+        func discard() {
+            handle.closeFile()
+            try? FileManager.default.removeItem(at: url)
+        }
+    }
+
+    /// Serial queue: chunks are written in the order the bridge delivers them.
+    private let transferQueue = DispatchQueue(label: "com.slm.share.transfer")
+    private var transfers: [String: Transfer] = [:]
+    private var transferSequence = 0
+
+    @objc(beginTransfer:)
+    func beginTransfer(command: CDVInvokedUrlCommand) {
+        let options = command.argument(at: 0) as? [String: Any] ?? [:]
+        transferQueue.async {
+            // Idle transfers are dropped whenever a new one starts
+            let now = Date()
+            for (id, transfer) in self.transfers where now.timeIntervalSince(transfer.lastActivity) > SLMShare.transferIdle {
+                transfer.discard()
+                self.transfers.removeValue(forKey: id)
+            }
+
+            self.transferSequence += 1
+            let id = "tx_\(Int64(now.timeIntervalSince1970 * 1000))_\(self.transferSequence)"
+            let url = self.shareCacheURL.appendingPathComponent("upload_\(id).part")
+            try? FileManager.default.createDirectory(at: self.shareCacheURL, withIntermediateDirectories: true)
+            guard FileManager.default.createFile(atPath: url.path, contents: nil),
+                  let handle = try? FileHandle(forWritingTo: url) else {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No se pudo crear el archivo temporal")
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+            let expectedBytes = (options["size"] as? NSNumber)?.intValue ?? 0
+            self.transfers[id] = Transfer(url: url, handle: handle, expectedBytes: expectedBytes,
+                                          mimeType: options["mimeType"] as? String)
+
+            let info: [String: Any] = ["transferId": id, "chunkSize": SLMShare.transferChunkBytes, "window": SLMShare.transferWindow]
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
 
-            // iPad support
-            if let popover = activityVC.popoverPresentationController {
-                popover.sourceView = self.viewController.view
-                popover.sourceRect = CGRect(x: self.viewController.view.bounds.midX, y: self.viewController.view.bounds.midY, width: 0, height: 0)
-                popover.permittedArrowDirections = []
+    /// ArrayBuffer chunks arrive as Data, strings are base64.
+    @objc(appendChunk:)
+    func appendChunk(command: CDVInvokedUrlCommand) {
+        let id = command.argument(at: 0) as? String ?? ""
+        let seq = (command.argument(at: 1) as? NSNumber)?.intValue ?? -1
+        let chunk = command.argument(at: 2)
+        transferQueue.async {
+            let fail = { (message: String) in
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: message)
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+            }
+            guard let transfer = self.transfers[id] else { return fail("Transferencia no encontrada: \(id)") }
+            guard seq == transfer.nextSeq else {
+                return fail("Chunk fuera de orden: se esperaba \(transfer.nextSeq) y llego \(seq)")
+            }
+            let data: Data
+            if let bytes = chunk as? Data {
+                data = bytes
+            } else if let text = chunk as? String, let decoded = Data(base64Encoded: text, options: .ignoreUnknownCharacters) {
+                data = decoded
+            } else {
+                return fail("Chunk invalido en \(id)")
+            }
+
+            transfer.handle.write(data)
+            data.withUnsafeBytes { _ = CC_SHA1_Update(&transfer.context, $0.baseAddress, CC_LONG(data.count)) }
+            transfer.bytes += data.count
+            transfer.nextSeq += 1
+            transfer.lastActivity = Date()
+
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: ["seq": seq, "bytes": transfer.bytes])
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
+
+    /// Moves the file under its SHA-1 with the sniffed extension, the handle works with share,
+    /// shareToApp and saveToGallery.
+    @objc(commit:)
+    func commitTransfer(command: CDVInvokedUrlCommand) {
+        let id = command.argument(at: 0) as? String ?? ""
+        transferQueue.async {
+            var result: CDVPluginResult
+            if let transfer = self.transfers.removeValue(forKey: id) {
+                transfer.handle.closeFile()
+                if transfer.expectedBytes > 0 && transfer.bytes != transfer.expectedBytes {
+                    result = CDVPluginResult(status: CDVCommandStatus_ERROR,
+                                             messageAs: "Transferencia incompleta: \(transfer.bytes) de \(transfer.expectedBytes) bytes")
+                } else {
+                    var digest = [UInt8](repeating: 0, count: Int(CC_SHA1_DIGEST_LENGTH))
+                    CC_SHA1_Final(&digest, &transfer.context)
+                    let hash = digest.map { String(format: "%02x", $0) }.joined()
+                    let (mimeType, ext) = SLMShare.sniffType(at: transfer.url, declared: transfer.mimeType)
+                    let target = self.shareCacheURL.appendingPathComponent(hash + ext)
+
+                    // Same content already cached, keep that file
+                    if FileManager.default.fileExists(atPath: target.path) {
+                        try? FileManager.default.removeItem(at: transfer.url)
+                    } else {
+                        try? FileManager.default.moveItem(at: transfer.url, to: target)
+                    }
+                    if FileManager.default.fileExists(atPath: target.path) {
+                        var info: [String: Any] = ["handle": target.absoluteString, "bytes": transfer.bytes]
+                        if let mimeType = mimeType { info["mimeType"] = mimeType }
+                        result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
+                    } else {
+                        result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No se pudo guardar la transferencia")
+                    }
+                }
+                try? FileManager.default.removeItem(at: transfer.url)
+            } else {
+                result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Transferencia no encontrada: \(id)")
             }
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
 
-            self.viewController.present(activityVC, animated: true)
+    @objc(abortTransfer:)
+    func abortTransfer(command: CDVInvokedUrlCommand) {
+        let id = command.argument(at: 0) as? String ?? ""
+        transferQueue.async {
+            let transfer = self.transfers.removeValue(forKey: id)
+            transfer?.discard()
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: ["aborted": transfer != nil])
+            self.commandDelegate.send(result, callbackId: command.callbackId)
         }
     }
 
@@ -93,7 +318,7 @@ import WebKit
 
             case "instagram":
                 if let imageBase64 = imageBase64,
-                   let imageData = Data(base64Encoded: imageBase64) {
+                   let imageData = self.loadImageData(imageBase64) {
                     // Instagram Stories API via UIPasteboard
                     let pasteboardItems: [[String: Any]] = [
                         ["com.instagram.sharedSticker.backgroundImage": imageData]
@@ -185,6 +410,8 @@ import WebKit
         let options = command.argument(at: 0) as? [String: Any] ?? [:]
         let shouldShare = options["share"] as? Bool ?? false
         let returnBase64 = options["returnBase64"] as? Bool ?? true
+        let encoding = ScreenshotEncoding(options: options)
+        let request = ShareRequest(options: options)
 
         DispatchQueue.main.async {
             guard let webView = self.webView as? WKWebView else {
@@ -199,7 +426,7 @@ import WebKit
                 let image = renderer.image { ctx in
                     view.drawHierarchy(in: view.bounds, afterScreenUpdates: true)
                 }
-                self.handleScreenshot(image: image, shouldShare: shouldShare, returnBase64: returnBase64, callbackId: command.callbackId)
+                self.handleScreenshot(image: image, shouldShare: shouldShare, returnBase64: returnBase64, encoding: encoding, request: request, callbackId: command.callbackId)
                 return
             }
 
@@ -216,38 +443,223 @@ import WebKit
                     return
                 }
 
-                self.handleScreenshot(image: image, shouldShare: shouldShare, returnBase64: returnBase64, callbackId: command.callbackId)
+                self.handleScreenshot(image: image, shouldShare: shouldShare, returnBase64: returnBase64, encoding: encoding, request: request, callbackId: command.callbackId)
+            }
+        }
+    }
+
+    /// Output options for shareScreenshot. WEBP is not encodable on iOS and falls back to JPEG.
+    private struct ScreenshotEncoding {
+        let jpeg: Bool
+        let quality: CGFloat
+        let maxDimension: CGFloat
+        let scale: CGFloat
+
+        init(options: [String: Any]) {
+            let format = (options["format"] as? String ?? "png").lowercased()
+            jpeg = format == "jpeg" || format == "jpg" || format == "webp"
+            quality = CGFloat(options["quality"] as? Double ?? (jpeg ? 90 : 100)) / 100
+            maxDimension = CGFloat(options["maxDimension"] as? Double ?? 0)
+            let requested = CGFloat(options["scale"] as? Double ?? 1)
+            scale = requested > 0 && requested <= 1 ? requested : 1
+        }
+
+        func resized(_ image: UIImage) -> UIImage {
+            let longest = max(image.size.width, image.size.height) * image.scale
+            var factor = scale
+            if maxDimension > 0, longest > 0 { factor = min(factor, maxDimension / longest) }
+            if factor >= 1 { return image }
+
+            let format = UIGraphicsImageRendererFormat.default()
+            format.scale = 1
+            let size = CGSize(width: image.size.width * image.scale * factor, height: image.size.height * image.scale * factor)
+            return UIGraphicsImageRenderer(size: size, format: format).image { _ in
+                image.draw(in: CGRect(origin: .zero, size: size))
             }
         }
+
+        func encode(_ image: UIImage) -> Data? {
+            return jpeg ? image.jpegData(compressionQuality: quality) : image.pngData()
+        }
+
+        var mimeType: String { return jpeg ? "image/jpeg" : "image/png" }
     }
 
-    private func handleScreenshot(image: UIImage, shouldShare: Bool, returnBase64: Bool, callbackId: String) {
+    private func handleScreenshot(image: UIImage, shouldShare: Bool, returnBase64: Bool, encoding: ScreenshotEncoding,
+                                  request: ShareRequest, callbackId: String) {
+        let image = encoding.resized(image)
+
         if shouldShare {
             let activityVC = UIActivityViewController(activityItems: [image], applicationActivities: nil)
 
             activityVC.completionWithItemsHandler = { _, completed, _, _ in
-                var info: [String: Any] = ["completed": completed]
-                if returnBase64, let pngData = image.pngData() {
-                    info["base64"] = pngData.base64EncodedString()
+                guard self.finishShare(request) else { return }
+
+                // Encode off the main thread, the share sheet is already gone
+                DispatchQueue.global(qos: .userInitiated).async {
+                    var info: [String: Any] = ["completed": completed]
+                    if let requestId = request.requestId { info["requestId"] = requestId }
+                    if returnBase64, let data = encoding.encode(image) {
+                        info["base64"] = data.base64EncodedString()
+                        info["mimeType"] = encoding.mimeType
+                    }
+                    let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
+                    self.commandDelegate.send(result, callbackId: callbackId)
+                }
+            }
+
+            presentShareSheet(activityVC, request: request, callbackId: callbackId)
+        } else {
+            DispatchQueue.global(qos: .userInitiated).async {
+                var info: [String: Any] = ["completed": true]
+                if returnBase64, let data = encoding.encode(image) {
+                    info["base64"] = data.base64EncodedString()
+                    info["mimeType"] = encoding.mimeType
                 }
                 let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
                 self.commandDelegate.send(result, callbackId: callbackId)
             }
+        }
+    }
+
+    // MARK: - Share requests
+
+    /// Identity and timeout of a share sheet, from the requestId/timeout options.
+    private struct ShareRequest {
+        let requestId: String?
+        let timeout: TimeInterval
+
+        init(options: [String: Any]) {
+            requestId = options["requestId"] as? String
+            timeout = (options["timeout"] as? Double ?? 0) / 1000
+        }
+    }
+
+    /// Open share sheets by requestId, only touched on the main thread.
+    private var pendingShares: [String: (controller: UIActivityViewController, callbackId: String)] = [:]
+
+    /// Presents the sheet and tracks it for cancelShare and the timeout. Main thread only.
+    private func presentShareSheet(_ activityVC: UIActivityViewController, request: ShareRequest, callbackId: String) {
+        if viewController.presentedViewController != nil {
+            // UIKit would silently drop the second sheet and its callback with it
+            let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Ya hay un share en curso")
+            commandDelegate.send(result, callbackId: callbackId)
+            return
+        }
+
+        // iPad support
+        if let popover = activityVC.popoverPresentationController {
+            popover.sourceView = viewController.view
+            popover.sourceRect = CGRect(x: viewController.view.bounds.midX, y: viewController.view.bounds.midY, width: 0, height: 0)
+            popover.permittedArrowDirections = []
+        }
+
+        if let requestId = request.requestId {
+            pendingShares[requestId] = (activityVC, callbackId)
+            if request.timeout > 0 {
+                DispatchQueue.main.asyncAfter(deadline: .now() + request.timeout) {
+                    guard let pending = self.pendingShares.removeValue(forKey: requestId) else { return }
+                    pending.controller.dismiss(animated: true)
+                    let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Tiempo de espera agotado al compartir")
+                    self.commandDelegate.send(result, callbackId: pending.callbackId)
+                }
+            }
+        }
+
+        viewController.present(activityVC, animated: true)
+    }
+
+    /// True when the caller still owns the request, false if it was cancelled or timed out.
+    private func finishShare(_ request: ShareRequest) -> Bool {
+        guard let requestId = request.requestId else { return true }
+        return pendingShares.removeValue(forKey: requestId) != nil
+    }
+
+    @objc(cancelShare:)
+    func cancelShare(command: CDVInvokedUrlCommand) {
+        let requestId = command.argument(at: 0) as? String ?? ""
 
-            if let popover = activityVC.popoverPresentationController {
-                popover.sourceView = self.viewController.view
-                popover.sourceRect = CGRect(x: self.viewController.view.bounds.midX, y: self.viewController.view.bounds.midY, width: 0, height: 0)
-                popover.permittedArrowDirections = []
+        DispatchQueue.main.async {
+            var cancelled = false
+            if let pending = self.pendingShares.removeValue(forKey: requestId) {
+                pending.controller.dismiss(animated: true)
+                let info: [String: Any] = ["completed": false, "cancelled": true, "requestId": requestId]
+                self.commandDelegate.send(CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info), callbackId: pending.callbackId)
+                cancelled = true
             }
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: ["cancelled": cancelled])
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
 
-            self.viewController.present(activityVC, animated: true)
-        } else {
-            var info: [String: Any] = ["completed": true]
-            if returnBase64, let pngData = image.pngData() {
-                info["base64"] = pngData.base64EncodedString()
+    // MARK: - registerTarget
+
+    /// Targets are Android intent definitions, iOS keeps its URL scheme routing in shareToApp.
+    @objc(registerTarget:)
+    func registerTarget(command: CDVInvokedUrlCommand) {
+        let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "registerTarget solo esta disponible en Android")
+        commandDelegate.send(result, callbackId: command.callbackId)
+    }
+
+    // MARK: - getBitmapPoolStats
+
+    /// Screenshots are not pooled on iOS, the counters exist for API parity with Android.
+    @objc(getBitmapPoolStats:)
+    func getBitmapPoolStats(command: CDVInvokedUrlCommand) {
+        let stats: [String: Any] = ["hits": 0, "misses": 0, "evictions": 0, "pooled": 0, "pooledBytes": 0, "maxBytes": 0]
+        let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: stats)
+        commandDelegate.send(result, callbackId: command.callbackId)
+    }
+
+    // MARK: - Metrics
+
+    private var metricsSince = Int64(Date().timeIntervalSince1970 * 1000)
+
+    /// Actions are not instrumented on iOS, the shape matches Android's getMetrics.
+    @objc(getMetrics:)
+    func getMetrics(command: CDVInvokedUrlCommand) {
+        let metrics: [String: Any] = ["since": metricsSince, "tracing": false, "actions": [String: Any]()]
+        let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: metrics)
+        commandDelegate.send(result, callbackId: command.callbackId)
+    }
+
+    @objc(resetMetrics:)
+    func resetMetrics(command: CDVInvokedUrlCommand) {
+        metricsSince = Int64(Date().timeIntervalSince1970 * 1000)
+        commandDelegate.send(CDVPluginResult(status: CDVCommandStatus_OK), callbackId: command.callbackId)
+    }
+
+    // MARK: - Cache
+
+    /// Scratch files written by the plugin live here, iOS clears tmp on its own as well.
+    private var shareCacheURL: URL {
+        return URL(fileURLWithPath: NSTemporaryDirectory()).appendingPathComponent("slm_share", isDirectory: true)
+    }
+
+    @objc(getCacheStats:)
+    func getCacheStats(command: CDVInvokedUrlCommand) {
+        commandDelegate.run {
+            let files = (try? FileManager.default.contentsOfDirectory(at: self.shareCacheURL, includingPropertiesForKeys: [.fileSizeKey])) ?? []
+            let bytes = files.reduce(0) { total, url in
+                total + ((try? url.resourceValues(forKeys: [.fileSizeKey]).fileSize) ?? 0)
             }
-            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
-            self.commandDelegate.send(result, callbackId: callbackId)
+            let stats: [String: Any] = ["files": files.count, "bytes": bytes, "maxBytes": 0, "maxAgeMs": 0, "hits": 0, "misses": 0]
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: stats)
+            self.commandDelegate.send(result, callbackId: command.callbackId)
+        }
+    }
+
+    @objc(clearCache:)
+    func clearCache(command: CDVInvokedUrlCommand) {
+        commandDelegate.run {
+            let files = (try? FileManager.default.contentsOfDirectory(at: self.shareCacheURL, includingPropertiesForKeys: [.fileSizeKey])) ?? []
+            var freed = 0
+            for url in files {
+                let size = (try? url.resourceValues(forKeys: [.fileSizeKey]).fileSize) ?? 0
+                if (try? FileManager.default.removeItem(at: url)) != nil { freed += size }
+            }
+            let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: ["freedBytes": freed])
+            self.commandDelegate.send(result, callbackId: command.callbackId)
         }
     }
 
@@ -257,11 +669,25 @@ import WebKit
     func saveToGallery(command: CDVInvokedUrlCommand) {
         let base64 = command.argument(at: 0) as? String ?? ""
 
-        guard let imageData = Data(base64Encoded: base64),
-              let image = UIImage(data: imageData) else {
-            let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Base64 invalido o no es una imagen")
-            commandDelegate.send(result, callbackId: command.callbackId)
-            return
+        // File references go to Photos by URL, base64 is saved as its original bytes
+        let fileURL = self.fileURL(forReference: base64)
+        var imageData: Data?
+        if let fileURL = fileURL {
+            guard FileManager.default.fileExists(atPath: fileURL.path) else {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Archivo no encontrado: \(fileURL.path)")
+                commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+        } else {
+            // Only validate the header, the original bytes are saved without re-encoding
+            guard let data = Data(base64Encoded: base64),
+                  let source = CGImageSourceCreateWithData(data as CFData, nil),
+                  CGImageSourceGetCount(source) > 0 else {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Base64 invalido o no es una imagen")
+                commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+            imageData = data
         }
 
         PHPhotoLibrary.requestAuthorization { status in
@@ -271,7 +697,11 @@ import WebKit
             }
             if isAuthorized {
                 PHPhotoLibrary.shared().performChanges({
-                    PHAssetChangeRequest.creationRequestForAsset(from: image)
+                    if let fileURL = fileURL {
+                        PHAssetChangeRequest.creationRequestForAssetFromImage(atFileURL: fileURL)
+                    } else if let imageData = imageData {
+                        PHAssetCreationRequest.forAsset().addResource(with: .photo, data: imageData, options: nil)
+                    }
                 }) { success, error in
                     if success {
                         let info: [String: Any] = ["saved": true]
@@ -290,8 +720,210 @@ import WebKit
         }
     }
 
+    @objc(saveManyToGallery:)
+    func saveManyToGallery(command: CDVInvokedUrlCommand) {
+        let images = command.argument(at: 0) as? [String] ?? []
+        guard !images.isEmpty else {
+            let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "No hay imagenes para guardar")
+            commandDelegate.send(result, callbackId: command.callbackId)
+            return
+        }
+
+        PHPhotoLibrary.requestAuthorization { status in
+            var isAuthorized = status == .authorized
+            if #available(iOS 14, *) {
+                isAuthorized = isAuthorized || status == .limited
+            }
+            guard isAuthorized else {
+                let result = CDVPluginResult(status: CDVCommandStatus_ERROR, messageAs: "Permiso de galeria denegado")
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+                return
+            }
+
+            // One change block per item, so a failing item only fails itself, and only the
+            // payload being saved is decoded at any time
+            self.commandDelegate.run {
+                var items: [Any] = Array(repeating: NSNull(), count: images.count)
+                var saved = 0
+                for (index, image) in images.enumerated() {
+                    var error: String?
+                    autoreleasepool {
+                        do {
+                            try self.saveGalleryItem(image)
+                        } catch let failure {
+                            error = (failure as? GalleryItemError)?.message ?? failure.localizedDescription
+                        }
+                    }
+
+                    var progress: [String: Any] = ["index": index, "saved": error == nil,
+                                                   "done": index + 1, "total": images.count]
+                    if let error = error {
+                        progress["error"] = error
+                    } else {
+                        saved += 1
+                        items[index] = ["saved": true]
+                    }
+                    let update = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: progress)
+                    update?.setKeepCallbackAs(true)
+                    self.commandDelegate.send(update, callbackId: command.callbackId)
+                }
+
+                let info: [String: Any] = [
+                    "completed": true,
+                    "saved": saved,
+                    "failed": images.count - saved,
+                    "items": items
+                ]
+                let result = CDVPluginResult(status: CDVCommandStatus_OK, messageAs: info)
+                self.commandDelegate.send(result, callbackId: command.callbackId)
+            }
+        }
+    }
+
+    private struct GalleryItemError: Error {
+        let message: String
+    }
+
+    /// Validates one gallery item and saves it in its own change block. Background thread.
+    private func saveGalleryItem(_ image: String) throws {
+        if let fileURL = fileURL(forReference: image) {
+            guard FileManager.default.fileExists(atPath: fileURL.path) else {
+                throw GalleryItemError(message: "Archivo no encontrado: \(fileURL.path)")
+            }
+            guard let source = CGImageSourceCreateWithURL(fileURL as CFURL, nil), CGImageSourceGetCount(source) > 0 else {
+                throw GalleryItemError(message: "El archivo no es una imagen: \(fileURL.lastPathComponent)")
+            }
+            try PHPhotoLibrary.shared().performChangesAndWait {
+                PHAssetChangeRequest.creationRequestForAssetFromImage(atFileURL: fileURL)
+            }
+            return
+        }
+
+        guard let data = Data(base64Encoded: image),
+              let source = CGImageSourceCreateWithData(data as CFData, nil),
+              CGImageSourceGetCount(source) > 0 else {
+            throw GalleryItemError(message: "Base64 invalido o no es una imagen")
+        }
+        try PHPhotoLibrary.shared().performChangesAndWait {
+            PHAssetCreationRequest.forAsset().addResource(with: .photo, data: data, options: nil)
+        }
+    }
+
     // MARK: - Helpers
 
+    /// Maps file:// and cdvfile:// references to a local file URL, nil for base64 payloads.
+    /// cdvfile:// follows the default cordova-plugin-file roots (temporary -> tmp, persistent -> Documents).
+    private func fileURL(forReference value: String) -> URL? {
+        if value.hasPrefix("file://") {
+            return URL(string: value)
+        }
+        guard value.hasPrefix("cdvfile://"), let url = URL(string: value) else { return nil }
+
+        let components = url.path.split(separator: "/", maxSplits: 1).map(String.init)
+        guard components.count == 2 else { return nil }
+        let root: URL
+        switch components[0] {
+        case "temporary":
+            root = URL(fileURLWithPath: NSTemporaryDirectory())
+        case "persistent":
+            guard let documents = FileManager.default.urls(for: .documentDirectory, in: .userDomainMask).first else { return nil }
+            root = documents
+        default:
+            return nil
+        }
+        return root.appendingPathComponent(components[1])
+    }
+
+    /// Activity item for a file argument: file references are shared in place, without
+    /// loading the bytes, so the share sheet sees their real type. Base64 images are decoded
+    /// into a UIImage; other base64 payloads (video, PDF, audio) are written to the cache with
+    /// the extension of their sniffed type and shared as a file.
+    private func shareItem(for value: String) -> Any? {
+        if let fileURL = fileURL(forReference: value) {
+            return FileManager.default.fileExists(atPath: fileURL.path) ? fileURL : nil
+        }
+        guard let data = Data(base64Encoded: value, options: .ignoreUnknownCharacters) else { return nil }
+        let (mimeType, ext) = SLMShare.sniffType(data.prefix(16), declared: nil)
+        if mimeType?.hasPrefix("image/") ?? true, let image = UIImage(data: data) { return image }
+
+        try? FileManager.default.createDirectory(at: shareCacheURL, withIntermediateDirectories: true)
+        let url = shareCacheURL.appendingPathComponent("share_\(UUID().uuidString)\(ext)")
+        return (try? data.write(to: url)) != nil ? url : nil
+    }
+
+    /// MIME type and extension from magic bytes, the declared type when nothing or only zip matches.
+    private static func sniffType(_ header: Data, declared: String?) -> (String?, String) {
+        let bytes = [UInt8](header)
+        func ascii(_ offset: Int, _ text: String) -> Bool {
+            let expected = Array(text.utf8)
+            return bytes.count >= offset + expected.count && Array(bytes[offset..<offset + expected.count]) == expected
+        }
+
+        var mimeType: String?
+        if bytes.starts(with: [0x89, 0x50, 0x4E, 0x47]) {
+            mimeType = "image/png"
+        } else if bytes.starts(with: [0xFF, 0xD8, 0xFF]) {
+            mimeType = "image/jpeg"
+        } else if ascii(0, "GIF8") {
+            mimeType = "image/gif"
+        } else if ascii(0, "RIFF") && ascii(8, "WEBP") {
+            mimeType = "image/webp"
+        } else if ascii(0, "RIFF") && ascii(8, "WAVE") {
+            mimeType = "audio/wav"
+        } else if ascii(4, "ftyp") {
+            if ascii(8, "hei") || ascii(8, "hev") || ascii(8, "mif1") {
+                mimeType = "image/heic"
+            } else if ascii(8, "qt  ") {
+                mimeType = "video/quicktime"
+            } else if ascii(8, "M4A") {
+                mimeType = "audio/mp4"
+            } else {
+                mimeType = "video/mp4"
+            }
+        } else if bytes.starts(with: [0x1A, 0x45, 0xDF, 0xA3]) {
+            mimeType = "video/webm"
+        } else if ascii(0, "%PDF-") {
+            mimeType = "application/pdf"
+        } else if ascii(0, "OggS") {
+            mimeType = "audio/ogg"
+        } else if ascii(0, "ID3") {
+            mimeType = "audio/mpeg"
+        } else if bytes.starts(with: [0x50, 0x4B, 0x03, 0x04]) {
+            mimeType = "application/zip"
+        }
+
+        let extensions = [
+            "image/png": ".png", "image/jpeg": ".jpg", "image/gif": ".gif", "image/webp": ".webp",
+            "image/heic": ".heic", "video/mp4": ".mp4", "video/quicktime": ".mov", "video/webm": ".webm",
+            "audio/mp4": ".m4a", "audio/mpeg": ".mp3", "audio/ogg": ".ogg", "audio/wav": ".wav",
+            "application/pdf": ".pdf", "application/zip": ".zip",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document": ".docx",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet": ".xlsx",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation": ".pptx",
+            "application/vnd.oasis.opendocument.text": ".odt", "application/epub+zip": ".epub",
+            "application/msword": ".doc", "application/vnd.ms-excel": ".xls",
+            "application/json": ".json", "text/csv": ".csv", "text/html": ".html", "text/plain": ".txt"
+        ]
+        // Zip is also the container of docx, xlsx and epub: a declared type says more.
+        if mimeType == "application/zip", let declared = declared, !declared.isEmpty { mimeType = declared }
+        let type = mimeType ?? declared
+        return (type, type.flatMap { extensions[$0] } ?? ".bin")
+    }
+
+    private static func sniffType(at url: URL, declared: String?) -> (String?, String) {
+        guard let handle = try? FileHandle(forReadingFrom: url) else { return (declared, ".bin") }
+        defer { handle.closeFile() }
+        return sniffType(handle.readData(ofLength: 16), declared: declared)
+    }
+
+    /// Loads the bytes of an image argument, either base64 or a file reference.
+    private func loadImageData(_ value: String) -> Data? {
+        if let fileURL = fileURL(forReference: value) {
+            return try? Data(contentsOf: fileURL, options: .mappedIfSafe)
+        }
+        return Data(base64Encoded: value)
+    }
+
     @discardableResult
     private func openURL(_ urlString: String) -> Bool {
         guard let url = URL(string: urlString) else { return false }
@@ -1,5 +1,39 @@
 var exec = require('cordova/exec');
 
+var requestCounter = 0;
+
+function copyOptions(options) {
+    var opts = {};
+    for (var key in options) {
+        if (Object.prototype.hasOwnProperty.call(options, key)) opts[key] = options[key];
+    }
+    return opts;
+}
+
+// Copia las opciones con un requestId para poder cancelar la operacion
+function withRequestId(options) {
+    var opts = copyOptions(options);
+    if (!opts.requestId) opts.requestId = 'slm_' + Date.now() + '_' + (++requestCounter);
+    return opts;
+}
+
+// Quita onProgress de las opciones y devuelve un callback que separa los avances (llegan por
+// keepCallback, con progress o done) del resultado final (con completed o handle)
+function progressAware(opts, successCallback) {
+    var onProgress = opts.onProgress;
+    delete opts.onProgress;
+    if (typeof onProgress === 'function') opts.progress = true;
+    return function (result) {
+        var isProgress = result && result.completed === undefined && result.handle === undefined &&
+            (result.progress !== undefined || result.done !== undefined);
+        if (isProgress) {
+            if (typeof onProgress === 'function') onProgress(result);
+            return;
+        }
+        if (successCallback) successCallback(result);
+    };
+}
+
 var SLMShare = {
 
     /**
@@ -8,36 +42,122 @@ var SLMShare = {
      *   {
      *     text: string,       // texto a compartir
      *     url: string,        // URL a compartir
-     *     image: string,      // base64 de imagen (opcional)
-     *     title: string       // titulo para el share sheet (opcional)
+     *     image: string,      // base64 o referencia file://, cdvfile:// o content:// (opcional)
+     *     files: string[],    // varios archivos (base64 o referencias) en un solo share sheet (opcional)
+     *                         // imagenes, videos, audio o documentos: el tipo se detecta del contenido
+     *     mimeType: string,   // fuerza el tipo MIME en vez de detectarlo (opcional)
+     *     onProgress: Function, // recibe { bytes, total, progress } al copiar referencias grandes;
+     *                         // progress es -1 si el tamano no se conoce (opcional)
+     *     title: string,      // titulo para el share sheet (opcional)
+     *     handle: string,     // handle de prepareShare, reemplaza text/url/image/files (opcional)
+     *     requestId: string,  // id para cancelShare (opcional, se genera si falta)
+     *     timeout: number     // ms desde la llamada hasta fallar si el share sheet no se abre
+     *                         // o no responde, la preparacion de archivos incluida (opcional)
      *   }
-     * @param {Function} successCallback - Recibe { completed, app? }
+     * @param {Function} successCallback - Recibe { completed, app?, requestId, cancelled?, timings }
+     *   timings: { decodeMs?, writeMs?, buildMs?, intentMs, totalMs } tiempo por etapa en ms
      * @param {Function} errorCallback - Recibe string con mensaje de error
+     * @returns {string} requestId de la operacion
      */
     share: function (options, successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'SLMShare', 'share', [options || {}]);
+        var opts = withRequestId(options || {});
+        exec(progressAware(opts, successCallback), errorCallback, 'SLMShare', 'share', [opts]);
+        return opts.requestId;
+    },
+
+    /**
+     * Prepara un share antes de que el usuario toque el boton: las imagenes se escriben,
+     * se otorgan las URIs y se arma el share sheet. share({ handle }) lo abre sin esperas.
+     * Cada handle sirve una sola vez y expira si no se usa.
+     * @param {Object} options - Las mismas opciones de contenido que share, mas:
+     *   {
+     *     ttl: number // ms de vida del handle (default y maximo 300000)
+     *   }
+     * @param {Function} successCallback - Recibe { handle, expiresAt, timings? }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    prepareShare: function (options, successCallback, errorCallback) {
+        var opts = copyOptions(options || {});
+        exec(progressAware(opts, successCallback), errorCallback, 'SLMShare', 'prepareShare', [opts]);
+    },
+
+    /**
+     * Libera un handle de prepareShare que ya no se va a usar.
+     * @param {string} handle - Valor devuelto por prepareShare
+     * @param {Function} successCallback - Recibe { released }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    releaseShare: function (handle, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'releaseShare', [handle || ""]);
+    },
+
+    /**
+     * Cancela un share en curso: cierra el share sheet o, si aun se preparan los archivos,
+     * evita que se abra. Su callback recibe { completed: false, cancelled: true }.
+     * @param {string} requestId - Valor devuelto por share o shareScreenshot
+     * @param {Function} successCallback - Recibe { cancelled }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    cancelShare: function (requestId, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'cancelShare', [requestId || ""]);
     },
 
     /**
      * Comparte directamente a una app especifica.
      * @param {Object} options - Opciones de compartir
      *   {
-     *     app: "whatsapp"|"telegram"|"instagram"|"facebook"|"twitter"|"email"|"sms",
+     *     app: "whatsapp"|"telegram"|"instagram"|"facebook"|"twitter"|"email"|"sms"
+     *          o el id de un target de registerTarget (Android),
      *     text: string,
      *     url: string,
-     *     image: string,      // base64 (opcional)
+     *     image: string,      // base64 o referencia file://, cdvfile:// o content:// (opcional)
      *     phoneNumber: string  // para whatsapp/sms (opcional)
      *   }
-     * @param {Function} successCallback - Recibe { completed, app }
+     * En Android las imagenes a whatsapp (1600 px), telegram (2560 px) e instagram (1920 px)
+     * se reducen antes de enviarse; el resultado queda en cache para repetir el share.
+     * @param {Function} successCallback - Recibe { completed, app, timings }
+     *   timings: { decodeMs?, writeMs?, transcodeMs?, profile?, intentMs, totalMs } tiempo por etapa en ms (Android)
      * @param {Function} errorCallback - Recibe string con mensaje de error
      */
     shareToApp: function (options, successCallback, errorCallback) {
         exec(successCallback, errorCallback, 'SLMShare', 'shareToApp', [options || {}]);
     },
 
+    /**
+     * Registra (o reemplaza) un destino para shareToApp sin publicar una version del plugin (Android).
+     * En Android 11+ los paquetes deben declararse en <queries> para que getAvailableApps los detecte.
+     * @param {Object} target - Definicion del destino
+     *   {
+     *     id: string,              // nombre usado en shareToApp({ app }) y getAvailableApps
+     *     packages: string[],      // paquetes en orden de preferencia, se usa el primero instalado
+     *     action: string,          // default "android.intent.action.SEND"
+     *     mimeType: string,        // tipo sin imagen (default "text/plain")
+     *     data: string,            // URI de datos, p. ej. "mailto:" o "sms:{phone}" (opcional)
+     *     textExtra: string,       // extra del texto (default android.intent.extra.TEXT)
+     *     separator: string,       // entre texto y url (default " ")
+     *     textMode: "join"|"urlOrText", // "urlOrText" manda solo la url si existe
+     *     image: "stream"|"data",  // como adjunta la imagen, sin este campo no la adjunta
+     *     imageAction: string,     // accion cuando hay imagen (default action)
+     *     imageType: string,       // default "image/*"
+     *     phoneUri: string,        // URI VIEW cuando hay phoneNumber, p. ej. "https://wa.me/{phoneDigits}?text={text}"
+     *     launchIfNoImage: boolean, // sin imagen abre la app en lugar de compartir
+     *     maxDimension: number,    // perfil de salida: lado mayor en px de la imagen enviada
+     *     format: "png"|"jpeg"|"webp", // perfil de salida: formato (default el original)
+     *     quality: number,         // perfil de salida: 0-100 (default 90)
+     *     maxBytes: number         // perfil de salida: tamano maximo, baja calidad y luego tamano
+     *   }
+     *   Las plantillas aceptan {text}, {url}, {phone} y {phoneDigits}.
+     * @param {Function} successCallback - Recibe { registered, id }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    registerTarget: function (target, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'registerTarget', [target || {}]);
+    },
+
     /**
      * Detecta que apps de redes sociales estan instaladas.
      * @param {Function} successCallback - Recibe { whatsapp, telegram, instagram, facebook, twitter, email, sms }
+     *   mas una entrada por cada target de registerTarget (Android)
      * @param {Function} errorCallback - Recibe string con mensaje de error
      */
     getAvailableApps: function (successCallback, errorCallback) {
@@ -49,24 +169,304 @@ var SLMShare = {
      * @param {Object} options - Opciones
      *   {
      *     share: boolean,     // si abrir share sheet despues de captura (default false)
-     *     returnBase64: boolean // si retornar el base64 (default true)
+     *     returnBase64: boolean, // si retornar el base64 (default true)
+     *     format: "png"|"jpeg"|"webp", // formato de salida (default "png", webp solo Android)
+     *     quality: number,    // 0-100 para jpeg/webp (default 90)
+     *     maxDimension: number, // lado mayor maximo en px
+     *     scale: number,      // factor de escala 0-1 (default 1)
+     *     rgb565: boolean,    // bitmap de 16 bits, menos memoria y sin alfa (Android)
+     *     captureMode: "auto"|"pixelcopy"|"draw", // Android: "auto" usa PixelCopy en API 26+
+     *                         // (incluye video y WebGL) y "draw" fuerza el render por software
+     *     requestId: string,  // id para cancelShare (opcional, se genera si falta)
+     *     timeout: number,    // ms desde la llamada hasta fallar si el share sheet no se abre
+     *                         // o no responde, la captura incluida (opcional)
+     *     fullPage: boolean,  // captura toda la pagina en una sola imagen PNG, armada por tiles
+     *                         // del alto del viewport sin tener la pagina entera en memoria (Android)
+     *     maxHeight: number,  // alto maximo en px de la captura completa (default 20000)
+     *     tiles: boolean,     // con fullPage, un archivo por tile en el formato pedido en vez de
+     *                         // una sola imagen (opcional)
+     *     onProgress: Function // recibe { progress, tile, tiles } por cada tile capturado
      *   }
-     * @param {Function} successCallback - Recibe { completed, base64? }
+     * @param {Function} successCallback - Recibe { completed, base64?, mimeType?, requestId?, timings? }
+     *   timings: { "capture.pixelcopyMs"|"capture.drawMs", captureMethod: "pixelcopy"|"draw",
+     *     compressMs?, totalMs } (Android); con fullPage la captura de tiles es "capture.tileMs"
+     *   con fullPage sin share: { completed, uri, width, height, truncated, mimeType: "image/png" }
+     *   con fullPage y tiles: { completed, tiles: [{ uri, y, height }], width, height, truncated, mimeType }
      * @param {Function} errorCallback - Recibe string con mensaje de error
+     * @returns {string} requestId de la operacion
      */
     shareScreenshot: function (options, successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'SLMShare', 'shareScreenshot', [options || {}]);
+        var opts = withRequestId(options || {});
+        exec(progressAware(opts, successCallback), errorCallback, 'SLMShare', 'shareScreenshot', [opts]);
+        return opts.requestId;
+    },
+
+    /**
+     * Estadisticas del pool de bitmaps que reutilizan las capturas (Android).
+     * En iOS todos los contadores son 0.
+     * @param {Function} successCallback - Recibe { hits, misses, evictions, pooled, pooledBytes, maxBytes }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    getBitmapPoolStats: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'getBitmapPoolStats', []);
+    },
+
+    /**
+     * Metricas por accion: llamadas, errores, latencia p50/p95/p99 total y por etapa
+     * (dispatch, decode, write, copy, capture.pixelcopy, capture.draw, capture.tile, compress,
+     * intent, save, publish), bytes procesados y el bitmap mas grande usado (Android).
+     * Las etapas capture.pixelcopy y capture.draw separan los dos metodos de captura.
+     * Con la preferencia SLMShareTrace=true en config.xml las etapas tambien aparecen
+     * como secciones en systrace/Perfetto. En iOS no hay acciones registradas.
+     * @param {Function} successCallback - Recibe { since, tracing, actions: { [accion]: {
+     *   count, errors, bytes, peakBitmapBytes, latency, stages: { [etapa]: latency } } } }
+     *   latency: { count, meanMs, p50Ms, p95Ms, p99Ms, maxMs }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    getMetrics: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'getMetrics', []);
+    },
+
+    /**
+     * Reinicia todas las metricas de getMetrics.
+     * @param {Function} successCallback - Sin argumentos
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    resetMetrics: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'resetMetrics', []);
+    },
+
+    /**
+     * Estadisticas de la cache de archivos compartidos.
+     * La cache se limpia sola por tamano y antiguedad (preferencias SLMShareCacheMaxMB
+     * y SLMShareCacheMaxAgeHours en config.xml, Android).
+     * @param {Function} successCallback - Recibe { files, bytes, maxBytes, maxAgeMs, hits, misses }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    getCacheStats: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'getCacheStats', []);
     },
 
     /**
-     * Guarda una imagen base64 en la galeria del dispositivo.
-     * @param {string} base64 - Imagen en base64
-     * @param {Function} successCallback - Recibe { saved, path? }
+     * Borra los archivos de la cache de compartir, salvo los que estan en uso: transferencias
+     * y copias a medio escribir, y archivos de menos de 5 minutos que un share puede estar leyendo.
+     * @param {Function} successCallback - Recibe { freedBytes }
      * @param {Function} errorCallback - Recibe string con mensaje de error
      */
-    saveToGallery: function (base64, successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'SLMShare', 'saveToGallery', [base64 || ""]);
+    clearCache: function (successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'clearCache', []);
+    },
+
+    /**
+     * Guarda una imagen en la galeria del dispositivo.
+     * Las referencias evitan pasar la imagen como base64 por el bridge.
+     * Por defecto se guardan los bytes originales con su tipo MIME, sin recomprimir.
+     * @param {string} base64 - Imagen en base64 o referencia file://, cdvfile:// o content://
+     * @param {Object} [options] - Conversion opcional (Android)
+     *   {
+     *     format: "png"|"jpeg"|"webp", // convierte al formato indicado
+     *     quality: number,             // 0-100 para jpeg/webp (default 90)
+     *     maxDimension: number         // reduce el lado mayor a este tamano en px
+     *   }
+     * @param {Function} successCallback - Recibe { saved, path?, mimeType?, converted? }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    saveToGallery: function (base64, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = {};
+        }
+        exec(successCallback, errorCallback, 'SLMShare', 'saveToGallery', [base64 || "", options || {}]);
+    },
+
+    /**
+     * Guarda varias imagenes en la galeria en una sola llamada.
+     * En Android se procesan en paralelo y se publican en grupos de 16 a medida que avanzan;
+     * una imagen que falla no cancela el resto.
+     * @param {string[]} images - Imagenes en base64 o referencias file://, cdvfile:// o content://
+     * @param {Object} [options] - Las mismas opciones que saveToGallery, mas:
+     *   {
+     *     onProgress: Function // recibe { index, saved, mimeType?, error?, done, total } por imagen
+     *   }
+     * @param {Function} successCallback - Recibe { completed, saved, failed, items: [{ saved, path?, mimeType? }|null] }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    saveManyToGallery: function (images, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = {};
+        }
+        var opts = copyOptions(options || {});
+        exec(progressAware(opts, successCallback), errorCallback, 'SLMShare', 'saveManyToGallery', [images || [], opts]);
+    },
+
+    /**
+     * Inicia una transferencia por partes, para pasar archivos grandes al nativo sin un
+     * unico string gigante por el bridge. Normalmente se usa transfer(), que la gestiona completa.
+     * @param {Object} [options] - { size: number, mimeType: string } (opcionales)
+     * @param {Function} successCallback - Recibe { transferId, chunkSize, window }
+     *   chunkSize: bytes sugeridos por chunk, window: chunks sin confirmar permitidos
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    beginTransfer: function (options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'beginTransfer', [options || {}]);
+    },
+
+    /**
+     * Envia un chunk de una transferencia. Los chunks van en orden (seq 0, 1, 2...) y no
+     * deben quedar mas de window sin confirmar.
+     * @param {string} transferId - Valor devuelto por beginTransfer
+     * @param {number} seq - Numero de chunk
+     * @param {ArrayBuffer|string} chunk - Bytes del chunk, o base64 con largo multiplo de 4
+     * @param {Function} successCallback - Recibe { seq, bytes } con el total escrito
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    appendChunk: function (transferId, seq, chunk, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'appendChunk', [transferId, seq, chunk]);
+    },
+
+    /**
+     * Cierra una transferencia. El handle es una referencia file:// que aceptan share,
+     * shareToApp, prepareShare y saveToGallery como image o en files. El archivo vive en
+     * la cache de compartir y se limpia con ella.
+     * @param {string} transferId - Valor devuelto por beginTransfer
+     * @param {Function} successCallback - Recibe { handle, bytes, mimeType? }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    commit: function (transferId, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'commit', [transferId]);
+    },
+
+    /**
+     * Descarta una transferencia sin terminar.
+     * @param {string} transferId - Valor devuelto por beginTransfer
+     * @param {Function} successCallback - Recibe { aborted }
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    abortTransfer: function (transferId, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'SLMShare', 'abortTransfer', [transferId]);
+    },
+
+    /**
+     * Pasa datos grandes al nativo por partes respetando la ventana de chunks sin confirmar.
+     * @param {ArrayBuffer|ArrayBufferView|Blob|string} data - Bytes, Blob o base64/data URL
+     * @param {Object} [options] - { mimeType: string, onProgress: Function }
+     *   onProgress recibe { bytes, total, progress }
+     * @param {Function} successCallback - Recibe { handle, bytes, mimeType? } como commit
+     * @param {Function} errorCallback - Recibe string con mensaje de error
+     */
+    transfer: function (data, options, successCallback, errorCallback) {
+        if (typeof options === 'function') {
+            errorCallback = successCallback;
+            successCallback = options;
+            options = {};
+        }
+        options = options || {};
+        var fail = function (message) {
+            if (errorCallback) errorCallback(message);
+        };
+
+        var source = chunkSource(data);
+        if (!source) {
+            fail('Tipo de datos no soportado para transfer');
+            return;
+        }
+
+        var beginOptions = { size: source.byteSize };
+        if (options.mimeType || data.type) beginOptions.mimeType = options.mimeType || data.type;
+
+        SLMShare.beginTransfer(beginOptions, function (info) {
+            var id = info.transferId;
+            var chunkSize = source.chunkSize(info.chunkSize);
+            var chunkCount = Math.ceil(source.length / chunkSize);
+            var nextSeq = 0;
+            var inFlight = 0;
+            var acked = 0;
+            var reading = false;
+            var failed = false;
+
+            var abort = function (message) {
+                if (failed) return;
+                failed = true;
+                SLMShare.abortTransfer(id);
+                fail(message);
+            };
+
+            // Un chunk a la vez se lee y se envia, asi los exec salen en orden
+            var pump = function () {
+                if (failed || reading || inFlight >= info.window || nextSeq >= chunkCount) return;
+                var seq = nextSeq++;
+                var start = seq * chunkSize;
+                reading = true;
+                inFlight++;
+                source.read(start, Math.min(source.length, start + chunkSize), function (chunk) {
+                    reading = false;
+                    SLMShare.appendChunk(id, seq, chunk, function (ack) {
+                        inFlight--;
+                        acked++;
+                        if (typeof options.onProgress === 'function' && source.byteSize) {
+                            options.onProgress({ bytes: ack.bytes, total: source.byteSize, progress: ack.bytes / source.byteSize });
+                        }
+                        if (acked === chunkCount) {
+                            SLMShare.commit(id, successCallback, fail);
+                        } else {
+                            pump();
+                        }
+                    }, abort);
+                    pump();
+                }, abort);
+            };
+
+            if (chunkCount === 0) {
+                SLMShare.commit(id, successCallback, fail);
+            } else {
+                pump();
+            }
+        }, fail);
     }
 };
 
+// Lector de chunks para transfer(): ArrayBuffer, vistas tipadas, Blob o base64
+function chunkSource(data) {
+    if (typeof data === 'string') {
+        var comma = data.indexOf(',');
+        var base64 = data.lastIndexOf('data:', 0) === 0 && comma >= 0 ? data.substring(comma + 1) : data;
+        return {
+            length: base64.length,
+            byteSize: 0,
+            // Multiplo de 4 caracteres para que cada chunk se decodifique solo
+            chunkSize: function (bytes) { return Math.ceil(bytes / 3) * 4; },
+            read: function (start, end, done) { done(base64.substring(start, end)); }
+        };
+    }
+    if (typeof Blob !== 'undefined' && data instanceof Blob) {
+        return {
+            length: data.size,
+            byteSize: data.size,
+            chunkSize: function (bytes) { return bytes; },
+            read: function (start, end, done, error) {
+                var reader = new FileReader();
+                reader.onload = function () { done(reader.result); };
+                reader.onerror = function () { error('Error leyendo Blob: ' + reader.error); };
+                reader.readAsArrayBuffer(data.slice(start, end));
+            }
+        };
+    }
+    var bytes = null;
+    if (data instanceof ArrayBuffer) {
+        bytes = new Uint8Array(data);
+    } else if (data && data.buffer instanceof ArrayBuffer) {
+        bytes = new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+    }
+    if (!bytes) return null;
+    return {
+        length: bytes.byteLength,
+        byteSize: bytes.byteLength,
+        chunkSize: function (size) { return size; },
+        read: function (start, end, done) { done(bytes.slice(start, end).buffer); }
+    };
+}
+
 module.exports = SLMShare;